@@ -1,7 +1,21 @@
 import src.mua.Main;
+import src.mua.Server;
+import src.mua.Session;
+import src.mua.core.FrameLayout;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaList;
+import src.mua.parse.Lexer;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class Test {
@@ -31,6 +45,45 @@ public class Test {
             "true",
             "true"}
     };
+    private interface Check {
+        boolean run() throws Exception;
+    }
+
+    // behaviour checks by what they show, run after the cases above
+    private static final Map<String, Check> checks = new LinkedHashMap<>();
+
+    static {
+        checks.put("code blocks run again and see redefinitions", Test::blocksRerun);
+        checks.put("tree and --vm give the same output", Test::vmMatchesTree);
+        checks.put("jit kernels fall back for a non-number", Test::jitDeoptimizes);
+        checks.put("arithmetic nodes fall back from numbers to words", Test::arithmeticSpecializes);
+        checks.put("frame slots keep locals, dynamic scope and computed names", Test::framesResolveSlots);
+        checks.put("call sites follow redefinition and erasure", Test::callSitesInvalidate);
+        checks.put("tail calls run in constant stack", Test::tailCallsFlat);
+        checks.put("deep recursion on the VM is bounded by the stack budget", Test::vmStackBudget);
+        checks.put("list slices do not alias when joined", Test::slicesDoNotAlias);
+        checks.put("shared booleans and small numbers keep their values", Test::sharedValues);
+        checks.put("numeric list reductions", Test::listReductions);
+        checks.put("numeric words compare and add as numbers", Test::numericWords);
+        checks.put("long input streams and lists across lines", Test::longInput);
+        checks.put("literals are not interned as symbols", Test::literalsNotInterned);
+        checks.put("identifiers, words and operators lex as before", Test::lexerClasses);
+        checks.put("load reads files like standard input", Test::loadMatchesInput);
+        checks.put("infix expressions follow precedence and associativity", Test::infixPrecedence);
+        checks.put("output and stop end the function body", Test::outputExitsEarly);
+        checks.put("buffered output is flushed before read", Test::outputFlushedBeforeRead);
+        checks.put("readlist splits on runs of blanks", Test::readlistSplits);
+        checks.put("snapshot round-trips nested lists and words", Test::snapshotRoundTrips);
+        checks.put("journal replays up to a torn or zero-filled tail", Test::journalSurvivesTornTail);
+        checks.put("token cache hit matches a miss, edited file misses", Test::tokenCacheMatches);
+        checks.put("builtins are found in the registry", Test::builtinRegistry);
+        checks.put("concurrent server sessions stay isolated", Test::serverSessionsIsolated);
+        checks.put("unboxed arithmetic tells NaN from a non-number", Test::arithmeticNaN);
+        checks.put("frame layouts skip data lists and nested definitions", Test::framesSkipDataAndDefinitions);
+        checks.put("call sites pick up names bound again after erase", Test::callSitesFollowErasure);
+        checks.put("deep recursion runs on the VM, in loaded files too, and fails cleanly in tree mode", Test::deepRecursionLimits);
+    }
+
     public static void main(String[] args) throws Exception {
         PipedOutputStream pos = new PipedOutputStream();
         PipedInputStream pin = new PipedInputStream(pos);
@@ -61,6 +114,7 @@ public class Test {
         }
         System.setOut(sysout);
         System.out.println(cnt);
+        checkBehaviour();
         /*
         PrintWriter out = new PrintWriter(
                 new OutputStreamWriter(
@@ -71,4 +125,457 @@ public class Test {
 
          */
     }
+
+    /*
+    Runs every check, printing the name of each that fails and then how many passed. Exits with
+    status 1 if one failed.
+     */
+    private static void checkBehaviour() throws IOException {
+        // the token cache reads its directory once, before the first load
+        File cache = Files.createTempDirectory("mua-cache").toFile();
+        System.setProperty("mua.cache", cache.getPath());
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Check> check : checks.entrySet()) {
+            boolean passed;
+            try {
+                passed = check.getValue().run();
+            } catch (Exception | StackOverflowError e) {
+                passed = false;
+                System.out.println(e);
+            }
+            if (!passed) {
+                failed.add(check.getKey());
+                System.out.println("FAILED: " + check.getKey());
+            }
+        }
+        System.out.println("behaviour checks passed: " + (checks.size() - failed.size()) + "/" + checks.size());
+        File[] entries = cache.listFiles();
+        if (entries != null) for (File entry : entries) entry.delete();
+        cache.delete();
+        System.exit(failed.isEmpty() ? 0 : 1);
+    }
+
+    // runs program as Main does on stdin and returns what it printed
+    private static String run(String program, String... options) throws Exception {
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setIn(new ByteArrayInputStream(program.getBytes()));
+        System.setOut(new PrintStream(out, true));
+        try {
+            Main.main(options);
+        } finally {
+            System.out.flush();
+            System.setIn(stdin);
+            System.setOut(stdout);
+        }
+        return out.toString();
+    }
+
+    private static boolean blocksRerun() throws Exception {
+        return run("make \"f [[x] [output add :x 1]]\n" +
+                "repeat 3 [print f 1]\n" +
+                "make \"f [[x] [output mul :x 10]]\n" +
+                "print f 2\n" +
+                "make \"b [print \"yes]\n" +
+                "if true :b :b\n" +
+                "repeat 2 :b\n").equals("2.0\n2.0\n2.0\n20.0\nyes\nyes\nyes\n");
+    }
+
+    private static boolean vmMatchesTree() throws Exception {
+        String program = "make \"fact [[n] [if lt :n 2 [output 1] [output mul :n fact sub :n 1]]]\n" +
+                "print fact 10\n" +
+                "make \"l []\n" +
+                "make \"i 0\n" +
+                "repeat 5 [make \"i add :i 1 make \"l join :l :i]\n" +
+                "print :l\n" +
+                "print butfirst :l\n" +
+                "make \"f [[x] [if gt :x 3 [output word \"big :x] [output list :x \"small]]]\n" +
+                "print f 5\n" +
+                "print f 2\n" +
+                "make \"g [[n] [if eq :n 0 [output \"done] [output g sub :n 1]]]\n" +
+                "print g 300\n" +
+                "print sentence [a [b]] \"c\n";
+        String tree = run(program);
+        return !tree.isEmpty() && tree.equals(run(program, "--vm"));
+    }
+
+    private static boolean jitDeoptimizes() throws Exception {
+        String out = run("make \"id [[x] [output :x]]\n" +
+                "make \"sq [[x] [output mul :x :x]]\n" +
+                "repeat 2000 [make \"r id 3 make \"r sq 3]\n" +
+                "print sq 4\n" +
+                "print sq \"5\n" +
+                "print id \"abc\n" +
+                "print id [1 2]\n" +
+                "print id 4\n");
+        return out.equals("16.0\n25.0\nabc\n1 2\n4.0\n");
+    }
+
+    private static boolean arithmeticSpecializes() throws Exception {
+        String out = run("make \"f [[x y] [output add :x :y]]\n" +
+                "make \"c [[x y] [output lt :x :y]]\n" +
+                "repeat 50 [make \"r f 1 2 make \"r c 1 2]\n" +
+                "print f 1.5 2\n" +
+                "print f \"3 \"4\n" +
+                "print c \"10 \"9\n" +
+                "print c 1 2\n" +
+                "print f 5 6\n");
+        return out.equals("3.5\n7.0\nfalse\ntrue\n11.0\n");
+    }
+
+    private static boolean framesResolveSlots() throws Exception {
+        String out = run("make \"f [[x] [make \"y mul :x 2 make word \"z \"a 5 output add :y thing word \"z \"a]]\n" +
+                "print f 3\n" +
+                "print isname \"y\n" +
+                "print isname \"za\n" +
+                "make \"h [[x] [make \"x add :x 1 output :x]]\n" +
+                "make \"x 10\n" +
+                "print h 1\n" +
+                "print :x\n");
+        return out.equals("11.0\nfalse\nfalse\n2.0\n10.0\n");
+    }
+
+    private static boolean callSitesInvalidate() throws Exception {
+        String out = run("make \"f [[x] [output add :x 1]]\n"
+                + "make \"g [[] [output f 1]]\n"
+                + "repeat 3 [print g]\n"
+                + "make \"f [[x] [output mul :x 10]]\n"
+                + "print g\n"
+                + "make \"h [[f] [output :f]]\n"
+                + "print h 7\n"
+                + "erase \"f\n"
+                + "print isname \"f\n");
+        return out.equals("2.0\n2.0\n2.0\n10.0\n7.0\nfalse\n");
+    }
+
+    private static boolean tailCallsFlat() throws Exception {
+        String program = "make \"loop [[n acc] [if eq :n 0 [output :acc] [output loop sub :n 1 add :acc 1]]]\n"
+                + "print loop 100000 0\n";
+        return run(program).equals("100000.0\n") && run(program, "--vm").equals("100000.0\n");
+    }
+
+    private static boolean vmStackBudget() throws Exception {
+        String program = "make \"depth [[n] [if eq :n 0 [output 0] [output add 1 depth sub :n 1]]]\n"
+                + "print depth 100000\n";
+        if (!run(program, "--vm").equals("100000.0\n")) return false;
+        System.setProperty("mua.vm.stackBudget", "100000");
+        try {
+            run(program, "--vm");
+            return false;
+        } catch (RuntimeException e) {
+            return e.getMessage().contains("peak depth");
+        } finally {
+            System.clearProperty("mua.vm.stackBudget");
+        }
+    }
+
+    private static boolean slicesDoNotAlias() throws Exception {
+        String out = run("make \"a [1 2 3]\n"
+                + "make \"b butlast :a\n"
+                + "make \"c join :b \"x\n"
+                + "make \"d join :b \"y\n"
+                + "make \"e join butfirst :a \"z\n"
+                + "print :c\nprint :d\nprint :e\nprint :a\nprint :b\n");
+        return out.equals("1 2 x\n1 2 y\n2 3 z\n1 2 3\n1 2\n");
+    }
+
+    private static boolean sharedValues() throws Exception {
+        String out = run("make \"x 3\nmake \"y 3\nmake \"x add :x 1\n"
+                + "print :y\nprint :x\nprint eq :y 3\nprint not eq :x 3\n"
+                + "print sub 0 200\nprint mul 2 600\nprint isname \"zz\n");
+        return out.equals("3.0\n4.0\ntrue\ntrue\n-200.0\n1200.0\nfalse\n");
+    }
+
+    private static boolean listReductions() throws Exception {
+        String out = run("make \"l [1 2 3 4]\n"
+                + "print sum :l\nprint product :l\nprint max :l\nprint min :l\n"
+                + "print dot :l [4 3 2 1]\nprint sum butfirst [5]\n");
+        return out.equals("10.0\n24.0\n4.0\n1.0\n20.0\n0.0\n");
+    }
+
+    private static boolean numericWords() throws Exception {
+        String out = run("print eq \"3 3\nprint eq \"3.0 3\nprint eq \"abc \"abc\nprint eq \"abc 3\n"
+                + "print add \"2 \"5\nprint isnumber \"3\n");
+        return out.equals("true\ntrue\ntrue\nfalse\n7.0\nfalse\n");
+    }
+
+    private static boolean longInput() throws Exception {
+        StringBuilder program = new StringBuilder("make \"x 0\n");
+        for (int i = 0; i < 5000; i++) program.append("make \"x add :x 1\n");
+        program.append("make \"f [[a]\n[output\nadd :a :x]]\nprint f 1\nprint :x\n");
+        String out = run(program.toString());
+        return out.equals("5001.0\n5000.0\n") && run(program.toString(), "--vm").equals(out);
+    }
+
+    private static boolean literalsNotInterned() throws Exception {
+        SymbolTable table = new SymbolTable();
+        new Lexer("make \"a 1\n", table);
+        int before = table.getSymbols().size();
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 1000; i++) source.append("make \"a ").append(i).append(" make \"b \"w").append(i).append('\n');
+        new Lexer(source.toString(), table);
+        return table.getSymbols().size() == before;
+    }
+
+    private static boolean lexerClasses() throws Exception {
+        String out = run("make \"a_1 5\nprint :a_1\n"
+                + "make \"f2 [[x_y] [output mul :x_y 2]]\nprint f2 3\n"
+                + "print (3*(4-2)+:a_1%3)\nprint \"w.x\n");
+        return out.equals("5.0\n6.0\n8.0\nw.x\n");
+    }
+
+    private static boolean loadMatchesInput() throws Exception {
+        String program = "make \"f [[x]\n[output add :x 1]]\nprint f 1\nprint \"done\n";
+        File file = File.createTempFile("mua", ".mua");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(program.replace("\n", "\r\n"));
+        }
+        String out = run("load \"" + file.getAbsolutePath() + "\n");
+        return out.equals("2.0\ndone\n") && out.equals(run(program));
+    }
+
+    private static boolean infixPrecedence() throws Exception {
+        String program = "print (1 - 2 + 3)\nprint (2 * 3 + 4 * 5)\nprint (10 / 2 / 5)\n"
+                + "print (-2 * 3)\nprint (2 - -3)\nprint (7 % 4 * 2)\n";
+        String expected = "2.0\n26.0\n1.0\n-6.0\n5.0\n6.0\n";
+        return run(program).equals(expected) && run(program, "--vm").equals(expected);
+    }
+
+    private static boolean outputExitsEarly() throws Exception {
+        String program = "make \"f [[x] [if gt :x 0 [output \"pos] [] print \"after output \"neg]]\n"
+                + "print f 1\nprint f -1\n"
+                + "make \"g [[] [print \"a stop print \"b]]\ng\n"
+                + "make \"h [[] [repeat 3 [output \"r] output \"none]]\nprint h\n";
+        String expected = "pos\nafter\nneg\na\nr\n";
+        return run(program).equals(expected) && run(program, "--vm").equals(expected);
+    }
+
+    private static boolean outputFlushedBeforeRead() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String[] seen = new String[1];
+        // hands out the answer to read only after the program asks for it
+        InputStream in = new InputStream() {
+            private final byte[][] parts = {"print \"prompt\nmake \"x read\n".getBytes(), "b\nprint :x\n".getBytes()};
+            private int part = 0;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (part == parts.length) return -1;
+                if (part == 1) seen[0] = out.toString();
+                byte[] bytes = parts[part++];
+                System.arraycopy(bytes, 0, b, off, bytes.length);
+                return bytes.length;
+            }
+        };
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        System.setIn(in);
+        System.setOut(new PrintStream(out));
+        try {
+            Main.main(new String[0]);
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+        }
+        return "prompt\n".equals(seen[0]) && out.toString().equals("prompt\nb\n");
+    }
+
+    private static boolean readlistSplits() throws Exception {
+        String program = "make \"l readlist\n  a   b \t c  \nprint :l\nprint first butfirst :l\nprint last :l\n"
+                + "make \"w read\nx y\nprint :w\n";
+        String expected = "a b c\nb\nc\nx y\n";
+        return run(program).equals(expected) && run(program, "--vm").equals(expected);
+    }
+
+    private static boolean snapshotRoundTrips() throws Exception {
+        File file = File.createTempFile("workspace", ".muaw");
+        file.deleteOnExit();
+        String define = "make \"n [1 [2 [x \"y]] [] w]\nmake \"w \"hello\nmake \"x 2.5\n";
+        String show = "print :n\nprint :w\nprint :x\nprint isname \"w\n";
+        String before = run(define + show);
+        String out = run(define + show + "save \"" + file.getAbsolutePath() + "\nerall\nprint isname \"w\n"
+                + "load \"" + file.getAbsolutePath() + "\n" + show);
+        return out.equals(before + "false\n" + before);
+    }
+
+    private static boolean journalSurvivesTornTail() throws Exception {
+        File directory = File.createTempFile("workspace", "");
+        if (!directory.delete() || !directory.mkdir()) return false;
+        String program = "make \"a 1\nmake \"b [x [y]]\nmake \"b join :b \"z\nmake \"c \"gone\nerase \"c\n";
+        String show = "print :a\nprint :b\nprint isname \"c\n";
+        System.setProperty("mua.workspace", directory.getPath());
+        try {
+            run(program);
+            File[] journals = directory.listFiles((dir, name) -> name.startsWith("journal."));
+            if (journals == null || journals.length != 1) return false;
+            // a record cut off inside its payload, then the zeros a crash can leave behind
+            try (FileOutputStream tail = new FileOutputStream(journals[0], true)) {
+                tail.write(new byte[]{0, 0, 0, 20, 1, 2, 3, 4, 0, 0, 0, 1, 'a'});
+            }
+            String torn = run(show);
+            try (FileOutputStream tail = new FileOutputStream(latestJournal(directory), true)) {
+                tail.write(new byte[64]);
+            }
+            String zeros = run(show);
+            String expected = "1.0\nx [y] z\nfalse\n";
+            return torn.equals(expected) && zeros.equals(expected);
+        } finally {
+            System.clearProperty("mua.workspace");
+            File[] files = directory.listFiles();
+            if (files != null) for (File file : files) file.delete();
+            directory.delete();
+        }
+    }
+
+    private static File latestJournal(File directory) {
+        File latest = null;
+        for (File file : directory.listFiles((dir, name) -> name.startsWith("journal."))) {
+            if (latest == null || generation(file) > generation(latest)) latest = file;
+        }
+        return latest;
+    }
+
+    private static int generation(File file) {
+        return Integer.parseInt(file.getName().substring("journal.".length()));
+    }
+
+    private static boolean tokenCacheMatches() throws Exception {
+        File source = File.createTempFile("cached", ".mua");
+        source.deleteOnExit();
+        File cache = new File(System.getProperty("mua.cache"));
+        String program = "make \"sq [[x]\n[output mul :x :x]]\nprint sq 7\nprint [a \"b 1.5]\n";
+        Files.write(source.toPath(), program.getBytes());
+        String load = "load \"" + source.getAbsolutePath() + "\n";
+        int before = entries(cache);
+        String miss = run(load);
+        String hit = run(load);
+        boolean same = miss.equals(run(program)) && hit.equals(miss) && entries(cache) == before + 1;
+        program += "print sq 3\n";
+        Files.write(source.toPath(), program.getBytes());
+        String edited = run(load);
+        return same && edited.equals(run(program)) && !edited.equals(miss) && entries(cache) == before + 2;
+    }
+
+    private static int entries(File cache) {
+        File[] files = cache.listFiles((dir, name) -> name.endsWith(".tok"));
+        return files == null ? 0 : files.length;
+    }
+
+    private static boolean builtinRegistry() throws Exception {
+        String out = run("make \"prints 5\nprint :prints\n"
+                + "make \"printx [[x] [output add :x 1]]\nprint printx 1\n"
+                + "print sum [1 2]\nprint :pi\n");
+        if (!out.equals("5.0\n2.0\n3.0\n3.14159\n")) return false;
+        try {
+            run("make \"print 3\n");
+            return false;
+        } catch (RuntimeException e) {
+            return e.getMessage().contains("reserved word");
+        }
+    }
+
+    private static boolean serverSessionsIsolated() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Thread server = new Thread(() -> {
+            try {
+                Server.serve(port, false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        try (Socket a = connect(port); Socket b = connect(port)) {
+            send(a, "make \"x 1\n");
+            send(b, "make \"x 2\nmake \"y 3\n");
+            send(a, "print :x\nprint isname \"y\n");
+            send(b, "print :x\n");
+            a.shutdownOutput();
+            b.shutdownOutput();
+            return receive(a).equals("1.0\nfalse\n") && receive(b).equals("2.0\n");
+        }
+    }
+
+    private static Socket connect(int port) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                if (attempt == 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void send(Socket socket, String text) throws IOException {
+        socket.getOutputStream().write(text.getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    private static String receive(Socket socket) throws IOException {
+        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[4096];
+        for (int count; (count = in.read(buffer)) >= 0; ) res.write(buffer, 0, count);
+        return res.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static boolean arithmeticNaN() throws Exception {
+        String out = run("make \"g [[x y] [output add div :x :y 1]]\n"
+                + "repeat 50 [make \"r g 4 2]\n"
+                + "print g 0 0\nprint g \"6 \"3\n"
+                + "repeat 50 [make \"r g 4 2]\n"
+                + "print g 6 3\nprint g 0 0\n");
+        return out.equals("NaN\n3.0\n3.0\nNaN\n");
+    }
+
+    private static boolean framesSkipDataAndDefinitions() throws Exception {
+        String program = "make \"outer [[x] [make \"inner [[] [make \"y 5 output :y]] "
+                + "make \"code [make \"z add :x 1] repeat 1 :code output add inner :z]]\n"
+                + "print outer 1\nprint isname \"y\nprint isname \"z\n";
+        Session session = new Session(new ByteArrayInputStream(program.getBytes()), new ByteArrayOutputStream(), false);
+        session.run();
+        MuaList outer = (MuaList) session.getSymbolTable().getVariable("outer");
+        FrameLayout layout = FrameLayout.of((MuaList) outer.get(0), (MuaList) outer.get(1), session.getSymbolTable());
+        return layout.slotOf("inner") >= 0 && layout.slotOf("code") >= 0
+                && layout.slotOf("y") < 0 && layout.slotOf("z") < 0
+                && run(program).equals("7.0\nfalse\nfalse\n") && run(program, "--vm").equals("7.0\nfalse\nfalse\n");
+    }
+
+    private static boolean callSitesFollowErasure() throws Exception {
+        String program = "make \"f [[x] [output add :x 1]]\nmake \"g [[] [output f 1]]\nprint g\n"
+                + "erase \"f\nmake \"f [[x] [output 5]]\nprint g\nprint g\n"
+                + "erall\nmake \"f [[x] [output 6]]\nmake \"g [[] [output f 1]]\nprint g\n";
+        String expected = "2.0\n5.0\n5.0\n6.0\n";
+        return run(program).equals(expected) && run(program, "--vm").equals(expected);
+    }
+
+    private static boolean deepRecursionLimits() throws Exception {
+        String def = "make \"f [[n] [if eq :n 0 [output 0] [output add 1 f sub :n 1]]]\n";
+        File file = File.createTempFile("mua", ".mua");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(def + "print f 100000\n");
+        }
+        String load = "load \"" + file.getPath() + "\n";
+        if (!run(load, "--vm").equals("100000.0\n")) return false;
+        // warm f up until the JIT compiles it, then recurse deeper than a kernel can
+        if (!run(def + "repeat 1200 [make \"r f 1]\nprint f 100000\n", "--vm").equals("100000.0\n")) return false;
+        try {
+            run(load);
+            return false;
+        } catch (RuntimeException e) {
+            return e.getMessage().contains("--vm");
+        }
+    }
 }
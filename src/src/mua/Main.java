@@ -1,28 +1,36 @@
 package src.mua;
 
-import src.mua.core.SymbolTable;
-import src.mua.parse.Interpreter;
-import src.mua.parse.Lexer;
+import src.mua.core.Journal;
 
+import java.io.IOException;
 import java.text.ParseException;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class Main {
-    public static void main(String[] args) throws ParseException {
-        Scanner scanner = new Scanner(System.in);
-        SymbolTable symbolTable = null;
-        try {
-            symbolTable = new SymbolTable();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
+    public static void main(String[] args) throws ParseException, IOException {
+        // --vm runs statements on the bytecode VM instead of the tree interpreter,
+        // --vm-stats does the same and reports the deepest frame stack on exit,
+        // --line-buffered flushes output after every line, the default when run on a terminal,
+        // --serve PORT runs a session for each connection to PORT on the loopback interface
+        List<String> options = args != null ? Arrays.asList(args) : Collections.emptyList();
+        boolean vmStats = options.contains("--vm-stats");
+        boolean useVm = vmStats || options.contains("--vm");
+        int serve = options.indexOf("--serve");
+        if (serve >= 0) {
+            Server.serve(Integer.parseInt(options.get(serve + 1)), useVm);
+            return;
         }
-        Lexer lexer;
-        lexer = new Lexer("", symbolTable);
-        while (scanner.hasNext()) {
-            String str = scanner.nextLine();
-            lexer.append(str);
-            while (!lexer.isComplete()) lexer.append(scanner.nextLine());
-            Interpreter.accept(lexer, symbolTable, scanner);
+        Session session = new Session(System.in, System.out, useVm);
+        String workspace = System.getProperty("mua.workspace");
+        Journal journal = workspace != null ? Journal.open(workspace, session.getSymbolTable()) : null;
+        session.getOutput().setLineBuffered(options.contains("--line-buffered") || System.console() != null);
+        try {
+            session.run();
+        } finally {
+            if (journal != null) journal.close();
+            if (vmStats) System.err.println("Peak VM frame depth: " + session.getVm().getPeakDepth());
         }
     }
 }
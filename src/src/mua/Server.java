@@ -0,0 +1,56 @@
+package src.mua;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Serves sessions on a port of the loopback interface, one per connection: the client sends
+statements and reads their output, as Main does on a pipe. Sessions run on virtual threads
+when the JDK has them (21 and later), otherwise on a pool of platform threads.
+ */
+public final class Server {
+    private Server() {
+    }
+
+    public static void serve(int port, boolean useVm) throws IOException {
+        ExecutorService executor = newExecutor();
+        try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            System.err.println("Serving Mua sessions on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket connection = server.accept();
+                executor.execute(() -> runSession(connection, useVm));
+            }
+        }
+    }
+
+    /*
+    An error ends its own session only: it is reported to the client and the connection closed.
+     */
+    private static void runSession(Socket connection, boolean useVm) {
+        try (Socket socket = connection) {
+            Session session = new Session(socket.getInputStream(), socket.getOutputStream(), useVm);
+            session.getOutput().setLineBuffered(true);
+            try {
+                session.run();
+            } catch (ParseException | RuntimeException | StackOverflowError e) {
+                session.getOutput().println(e.toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // looked up reflectively, so the server still builds and runs on JDKs before 21
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package src.mua;
+
+import src.mua.core.LineReader;
+import src.mua.core.MuaInput;
+import src.mua.core.MuaOutput;
+import src.mua.core.SymbolTable;
+import src.mua.parse.Interpreter;
+import src.mua.parse.Lexer;
+import src.mua.vm.MuaVM;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+
+/*
+One interpreter with its own variables, input and output. Sessions share nothing but the
+immutable builtins, so any number of them can run in one JVM, each on its own thread.
+Main runs one on stdin and stdout, Server one per connection.
+ */
+public final class Session {
+    private final MuaInput input;
+    private final SymbolTable symbolTable;
+    private final MuaVM vm;
+
+    public Session(InputStream in, OutputStream out, boolean useVm) {
+        input = new LineReader(in);
+        symbolTable = new SymbolTable(new MuaOutput(out));
+        vm = useVm ? new MuaVM() : null;
+        symbolTable.setVm(vm);
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public MuaOutput getOutput() {
+        return symbolTable.getOutput();
+    }
+
+    // null unless statements run on the VM
+    public MuaVM getVm() {
+        return vm;
+    }
+
+    /*
+    Runs statements from the input until it ends, then flushes the output.
+     */
+    public void run() throws ParseException {
+        Lexer lexer = new Lexer("", symbolTable);
+        try {
+            while (input.hasNext()) {
+                lexer.append(input.nextLine());
+                while (!lexer.isComplete()) lexer.append(input.nextLine());
+                if (vm != null) vm.accept(lexer, symbolTable, input);
+                else Interpreter.accept(lexer, symbolTable, input);
+            }
+        } catch (StackOverflowError e) {
+            // the tree interpreter recurses on the Java stack for calls that are not tail calls
+            throw new RuntimeException("Recursion too deep for the Java stack: use --vm or a larger -Xss");
+        } finally {
+            getOutput().flush();
+        }
+    }
+}
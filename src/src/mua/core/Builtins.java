@@ -0,0 +1,183 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaValue;
+
+/*
+Generated by BuiltinsGenerator from MuaCoreFuncImpl and MuaConsts, do not edit.
+Symbols interns the names of the functions right after its predefined symbols, so the
+function with symbol id Symbols.FIRST_BUILTIN + i is FUNCS[i] in every interpreter.
+ */
+final class Builtins {
+    static final String[] NAMES = {
+            "make",
+            "erase",
+            "isname",
+            "thing",
+            "print",
+            "read",
+            "negative",
+            "add",
+            "sub",
+            "mul",
+            "div",
+            "mod",
+            "eq",
+            "gt",
+            "lt",
+            "and",
+            "or",
+            "not",
+            "if",
+            "output",
+            "repeat",
+            "export",
+            "isnumber",
+            "isword",
+            "islist",
+            "isbool",
+            "isempty",
+            "readlist",
+            "word",
+            "list",
+            "sentence",
+            "join",
+            "first",
+            "last",
+            "butfirst",
+            "butlast",
+            "sum",
+            "product",
+            "max",
+            "min",
+            "dot",
+            "random",
+            "int",
+            "sqrt",
+            "wait",
+            "poall",
+            "erall",
+            "save",
+            "load",
+    };
+
+    static final MuaFunc[] FUNCS = {
+            MuaCoreFuncImpl._make,
+            MuaCoreFuncImpl._erase,
+            MuaCoreFuncImpl._isname,
+            MuaCoreFuncImpl._thing,
+            MuaCoreFuncImpl._print,
+            MuaCoreFuncImpl._read,
+            MuaCoreFuncImpl._negative,
+            MuaCoreFuncImpl._add,
+            MuaCoreFuncImpl._sub,
+            MuaCoreFuncImpl._mul,
+            MuaCoreFuncImpl._div,
+            MuaCoreFuncImpl._mod,
+            MuaCoreFuncImpl._eq,
+            MuaCoreFuncImpl._gt,
+            MuaCoreFuncImpl._lt,
+            MuaCoreFuncImpl._and,
+            MuaCoreFuncImpl._or,
+            MuaCoreFuncImpl._not,
+            MuaCoreFuncImpl._if,
+            MuaCoreFuncImpl._output,
+            MuaCoreFuncImpl._repeat,
+            MuaCoreFuncImpl._export,
+            MuaCoreFuncImpl._isnumber,
+            MuaCoreFuncImpl._isword,
+            MuaCoreFuncImpl._islist,
+            MuaCoreFuncImpl._isbool,
+            MuaCoreFuncImpl._isempty,
+            MuaCoreFuncImpl._readlist,
+            MuaCoreFuncImpl._word,
+            MuaCoreFuncImpl._list,
+            MuaCoreFuncImpl._sentence,
+            MuaCoreFuncImpl._join,
+            MuaCoreFuncImpl._first,
+            MuaCoreFuncImpl._last,
+            MuaCoreFuncImpl._butfirst,
+            MuaCoreFuncImpl._butlast,
+            MuaCoreFuncImpl._sum,
+            MuaCoreFuncImpl._product,
+            MuaCoreFuncImpl._max,
+            MuaCoreFuncImpl._min,
+            MuaCoreFuncImpl._dot,
+            MuaCoreFuncImpl._random,
+            MuaCoreFuncImpl._int,
+            MuaCoreFuncImpl._sqrt,
+            MuaCoreFuncImpl._wait,
+            MuaCoreFuncImpl._poall,
+            MuaCoreFuncImpl._erall,
+            MuaCoreFuncImpl._save,
+            MuaCoreFuncImpl._load,
+    };
+
+    static final String[] CONST_NAMES = {
+            "pi",
+            "run",
+    };
+
+    static final MuaValue[] CONSTS = {
+            MuaConsts._pi,
+            MuaConsts._run,
+    };
+
+    private Builtins() {
+    }
+
+    // index of a function name in NAMES, or -1
+    static int indexOf(String name) {
+        switch (name) {
+            case "make": return 0;
+            case "erase": return 1;
+            case "isname": return 2;
+            case "thing": return 3;
+            case "print": return 4;
+            case "read": return 5;
+            case "negative": return 6;
+            case "add": return 7;
+            case "sub": return 8;
+            case "mul": return 9;
+            case "div": return 10;
+            case "mod": return 11;
+            case "eq": return 12;
+            case "gt": return 13;
+            case "lt": return 14;
+            case "and": return 15;
+            case "or": return 16;
+            case "not": return 17;
+            case "if": return 18;
+            case "output": return 19;
+            case "repeat": return 20;
+            case "export": return 21;
+            case "isnumber": return 22;
+            case "isword": return 23;
+            case "islist": return 24;
+            case "isbool": return 25;
+            case "isempty": return 26;
+            case "readlist": return 27;
+            case "word": return 28;
+            case "list": return 29;
+            case "sentence": return 30;
+            case "join": return 31;
+            case "first": return 32;
+            case "last": return 33;
+            case "butfirst": return 34;
+            case "butlast": return 35;
+            case "sum": return 36;
+            case "product": return 37;
+            case "max": return 38;
+            case "min": return 39;
+            case "dot": return 40;
+            case "random": return 41;
+            case "int": return 42;
+            case "sqrt": return 43;
+            case "wait": return 44;
+            case "poall": return 45;
+            case "erall": return 46;
+            case "save": return 47;
+            case "load": return 48;
+            default: return -1;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package src.mua.core;
+
+/*
+Caches the function a name resolves to at one place in the code. Entries are kept per frame
+layout, up to a few layouts, and are valid while the version of the name is unchanged.
+Every rebinding of the name outside a frame slot bumps that version, and erasing it retires
+the version for a new one. Names that are slots
+of the frame, and frames with locals made under computed names, are looked up every time.
+ */
+public final class CallSite {
+    private static final int ENTRIES = 4;
+
+    private final String name;
+    private MuaFunc core;
+    private SymbolTable.Version version;
+    private final FrameLayout[] layouts = new FrameLayout[ENTRIES];
+    private final boolean[] local = new boolean[ENTRIES];
+    private final int[] versions = new int[ENTRIES];
+    private final MuaFunc[] funcs = new MuaFunc[ENTRIES];
+    private int count = 0, next = 0;
+
+    public CallSite(String name, SymbolTable symbolTable) {
+        this.name = name;
+        if (symbolTable.isCoreFunction(name)) core = symbolTable.getFunction(name);
+        else version = symbolTable.versionOf(name);
+    }
+
+    /*
+    For an identifier token: a builtin is found by its symbol id, without hashing the name.
+     */
+    public CallSite(int symbol, SymbolTable symbolTable) {
+        this.name = symbolTable.getSymbols().name(symbol);
+        int builtin = Symbols.builtinIndex(symbol);
+        if (builtin >= 0) core = Builtins.FUNCS[builtin];
+        else version = symbolTable.versionOf(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /*
+    Returns the function bound to the name, or null if the name is not a function.
+     */
+    public MuaFunc lookup(SymbolTable symbolTable) {
+        if (core != null) return core;
+        int i = entry(symbolTable);
+        return i < 0 ? symbolTable.findFunction(name) : funcs[i];
+    }
+
+    public int argCount(SymbolTable symbolTable) {
+        if (core != null) return core.argCount();
+        int i = entry(symbolTable);
+        if (i < 0) return symbolTable.getFunctionArgCount(name);
+        return funcs[i] == null ? -1 : funcs[i].argCount();
+    }
+
+    /*
+    The entry for the layout of symbolTable, brought up to date, or -1 when the name has to be
+    looked up every time.
+     */
+    private int entry(SymbolTable symbolTable) {
+        if (symbolTable.hasDynamicLocals()) return -1;
+        if (version.retired) {
+            version = symbolTable.versionOf(name);
+            count = 0;
+        }
+        FrameLayout layout = symbolTable.getLayout();
+        int i = 0;
+        while (i < count && layouts[i] != layout) i++;
+        if (i == count) {
+            if (count < ENTRIES) count++;
+            else i = next++ % ENTRIES;
+            layouts[i] = layout;
+            local[i] = layout != null && layout.slotOf(name) >= 0;
+            versions[i] = version.value - 1;
+        }
+        if (local[i]) return -1;
+        if (versions[i] != version.value) {
+            funcs[i] = symbolTable.findFunction(name);
+            versions[i] = version.value;
+        }
+        return i;
+    }
+}
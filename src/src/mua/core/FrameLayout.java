@@ -0,0 +1,94 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+import src.mua.core.types.MuaWord;
+import src.mua.parse.Lexer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Slot assignment for the locals of one user function: its parameters
+and every name the body assigns with make and a literal word. Other names are looked up by name.
+ */
+public class FrameLayout {
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final int[] paramSlots;
+    private final MuaList body;
+    private boolean reservedParam = false;
+
+    private FrameLayout(MuaList params, MuaList body, SymbolTable symbolTable) {
+        this.body = body;
+        paramSlots = new int[params.size()];
+        for (int i = 0; i < paramSlots.length; i++) {
+            String name = params.get(i).toString();
+            if (symbolTable.isReserved(name)) reservedParam = true;
+            paramSlots[i] = addSlot(name);
+        }
+        resolve(body, symbolTable);
+    }
+
+    /*
+    The layout is cached on the parameter list, in an entry of its own.
+     */
+    public static FrameLayout of(MuaList params, MuaList body, SymbolTable symbolTable) {
+        FrameLayout layout = params.getCached(FrameLayout.class);
+        if (layout != null && layout.body == body) return layout;
+        layout = new FrameLayout(params, body, symbolTable);
+        params.setCached(layout);
+        return layout;
+    }
+
+    /*
+    Adds the names code assigns, looking into the blocks it runs. A list bound with make is data
+    until something runs it, and a nested definition makes frames of its own, so neither is
+    looked into; a make in them that does run in this frame finds its name without a slot.
+     */
+    private void resolve(MuaList code, SymbolTable symbolTable) {
+        for (int i = 0; i < code.size(); i++) {
+            MuaValue item = code.get(i);
+            if (item instanceof MuaList) {
+                if (!symbolTable.isCustomFunction(item)) resolve((MuaList) item, symbolTable);
+            } else if (item.toString().equals("make") && i + 1 < code.size() && code.get(i + 1) instanceof MuaWord) {
+                String name = code.get(i + 1).toString();
+                if (name.length() > 1 && name.charAt(0) == '"' && Lexer.isValidId(name.substring(1))
+                        && !symbolTable.isReserved(name.substring(1)))
+                    addSlot(name.substring(1));
+                if (i + 2 < code.size() && code.get(i + 2) instanceof MuaList) i += 2;
+            }
+        }
+    }
+
+    private int addSlot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
+        names.add(name);
+        slots.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public String nameOf(int slot) {
+        return names.get(slot);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /*
+    Binds call arguments to a new frame for this layout.
+     */
+    public SymbolTable newFrame(SymbolTable parent, MuaValue[] args) {
+        if (reservedParam) throw new RuntimeException("Invalid variable name: reserved word");
+        SymbolTable frame = new SymbolTable(parent, this);
+        for (int i = 0; i < paramSlots.length; i++) frame.setSlot(paramSlots[i], args[i]);
+        return frame;
+    }
+}
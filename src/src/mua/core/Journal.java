@@ -0,0 +1,334 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+Keeps the global variables in a directory across runs, enabled with -Dmua.workspace=DIR.
+snapshot.N holds them as of the end of journal.N, and each journal.M after it holds the make,
+erase and erall records since, appended in order. Each record is framed as
+
+    length:int crc32:int payload
+
+and records are committed in groups, by a background thread every mua.journal.commitMillis,
+or sooner when the buffer fills.
+A make of a list that was built from the list last recorded for the same name, as join, butfirst
+and butlast build them, is recorded as a SLICE of that list plus the items added, so growing or
+draining a list one item at a time costs a record of that item rather than of the whole list.
+When the open journal passes mua.journal.compactBytes a new one is started, and the workspace
+as it was is folded into the next snapshot, which the background thread writes before deleting
+the files it replaces.
+Opening replays the latest snapshot and the journals after it. A record torn by a crash, or the
+zeros a file system may leave after the last write, fails its length or checksum and ends its
+journal.
+ */
+public final class Journal {
+    private static final byte MAKE = 0, ERASE = 1, CLEAR = 2, SLICE = 3;
+    private static final long compactBytes = Long.getLong("mua.journal.compactBytes", 16L << 20);
+    private static final long commitMillis = Long.getLong("mua.journal.commitMillis", 200);
+
+    private final Path directory;
+    private final SymbolTable symbolTable;
+    private final ScheduledExecutorService background = Executors.newScheduledThreadPool(2, task -> {
+        Thread thread = new Thread(task, "mua-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel channel;
+    private Snapshot.Writer writer;
+    // each record is encoded here first, to be framed with its length and checksum
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final Snapshot.Writer record = new Snapshot.Writer(Channels.newChannel(recordBytes), ByteBuffer.allocate(4096));
+    private final CRC32 checksum = new CRC32();
+    private final Map<String, MuaList> recorded = new HashMap<>(); // last list recorded for each name
+    private int generation; // number of the open journal
+    private boolean pending = false;
+    private Future<?> compaction;
+
+    private Journal(Path directory, SymbolTable symbolTable) {
+        this.directory = directory;
+        this.symbolTable = symbolTable;
+    }
+
+    /*
+    Restores the workspace in directory into the root symbolTable, then records its changes.
+     */
+    public static Journal open(String directory, SymbolTable symbolTable) {
+        Journal journal = new Journal(Paths.get(directory), symbolTable);
+        try {
+            boolean replayed = journal.restore();
+            journal.start();
+            if (replayed) journal.compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Workspace Error: " + directory);
+        }
+        journal.background.scheduleWithFixedDelay(journal::commitQuietly, commitMillis, commitMillis, TimeUnit.MILLISECONDS);
+        symbolTable.setJournal(journal);
+        return journal;
+    }
+
+    private boolean restore() throws IOException {
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve("snapshot.tmp"));
+        int snapshot = latest("snapshot");
+        if (snapshot > 0) Snapshot.load(directory.resolve("snapshot." + snapshot).toString(), symbolTable);
+        generation = snapshot;
+        List<Integer> journals = generations("journal");
+        journals.sort(null);
+        boolean replayed = false;
+        for (int number : journals) {
+            if (number <= snapshot) continue;
+            replay(directory.resolve("journal." + number));
+            generation = number;
+            replayed = true;
+        }
+        return replayed;
+    }
+
+    private void replay(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = Snapshot.map(channel, path.toString());
+            while (file.remaining() >= 8) {
+                int length = file.getInt(), sum = file.getInt();
+                if (length <= 0 || length > file.remaining()) break;
+                ByteBuffer payload = file.slice();
+                payload.limit(length);
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if ((int) checksum.getValue() != sum) break;
+                file.position(file.position() + length);
+                Snapshot.Reader reader = new Snapshot.Reader(payload);
+                byte type = reader.buffer.get();
+                String name = type == CLEAR ? null : reader.readWord();
+                MuaValue value = null;
+                if (type == MAKE) value = reader.readValue();
+                else if (type == SLICE) value = readSlice(reader, symbolTable.getVariable(name));
+                if (type == MAKE || type == SLICE) {
+                    symbolTable.provideVariable(name, value);
+                    symbolTable.getJit().invalidate(name);
+                } else if (type == ERASE) {
+                    if (symbolTable.getLocalNames().contains(name)) symbolTable.eraseSymbol(name);
+                } else if (type == CLEAR) {
+                    symbolTable.eraseLocalVariables();
+                    symbolTable.getJit().invalidateAll();
+                } else throw new RuntimeException("Corrupt journal: unknown record " + type + " in " + path);
+            }
+        }
+    }
+
+    /*
+    SLICE name skip:int keep:int count:int value*: the items [skip, skip + keep) of the list
+    recorded last for name, followed by count more.
+     */
+    private static MuaList readSlice(Snapshot.Reader reader, MuaValue previous) {
+        int skip = reader.buffer.getInt(), keep = reader.buffer.getInt();
+        MuaValue[] added = new MuaValue[reader.buffer.getInt()];
+        for (int i = 0; i < added.length; i++) added[i] = reader.readValue();
+        MuaList list = ((MuaList) previous).slice(skip, skip + keep);
+        return added.length == 0 ? list : list.concat(new MuaList(Arrays.asList(added)));
+    }
+
+    private void writeSlice(MuaList list, MuaList previous, int skip) throws IOException {
+        int keep = Math.min(list.size(), previous.size() - skip);
+        record.reserve(12);
+        record.buffer.putInt(skip).putInt(keep).putInt(list.size() - keep);
+        for (int i = keep; i < list.size(); i++) record.writeValue(list.get(i));
+    }
+
+    /*
+    Appends the record encoded so far, framed with its length and checksum.
+     */
+    private void append() throws IOException {
+        record.drain();
+        record.forget();
+        byte[] payload = recordBytes.toByteArray();
+        recordBytes.reset();
+        checksum.reset();
+        checksum.update(payload);
+        writer.reserve(8);
+        writer.buffer.putInt(payload.length).putInt((int) checksum.getValue());
+        writer.writeBytes(payload);
+    }
+
+    private void start() throws IOException {
+        generation++;
+        channel = FileChannel.open(directory.resolve("journal." + generation), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new Snapshot.Writer(channel);
+    }
+
+    synchronized void make(String name, MuaValue value) {
+        MuaList previous = recorded.remove(name);
+        int skip = -1;
+        if (value instanceof MuaList) {
+            if (previous != null) skip = ((MuaList) value).offsetIn(previous);
+            recorded.put(name, (MuaList) value);
+        }
+        try {
+            record.reserve(1);
+            record.buffer.put(skip >= 0 ? SLICE : MAKE);
+            record.writeWord(name);
+            if (skip >= 0) writeSlice((MuaList) value, previous, skip);
+            else record.writeValue(value);
+            append();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Journal Write Error: " + directory);
+        }
+        recorded();
+    }
+
+    synchronized void erase(String name) {
+        recorded.remove(name);
+        try {
+            record.reserve(1);
+            record.buffer.put(ERASE);
+            record.writeWord(name);
+            append();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Journal Write Error: " + directory);
+        }
+        recorded();
+    }
+
+    synchronized void clear() {
+        recorded.clear();
+        try {
+            record.reserve(1);
+            record.buffer.put(CLEAR);
+            append();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Journal Write Error: " + directory);
+        }
+        recorded();
+    }
+
+    private void recorded() {
+        pending = true;
+        if (writer.written() > compactBytes && (compaction == null || compaction.isDone())) {
+            try {
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new RuntimeException("Journal Write Error: " + directory);
+            }
+        }
+    }
+
+    /*
+    Writes the records so far and forces them to disk.
+     */
+    public synchronized void commit() throws IOException {
+        if (!pending) return;
+        writer.drain();
+        channel.force(false);
+        pending = false;
+    }
+
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+    Closes the open journal and starts the next, then encodes the variables as they are now into
+    the snapshot for the closed one, which is written to disk in the background. The encoding is
+    done here rather than there because a list that looks immutable may share its array with one
+    the interpreter is appending to, and that array can be replaced while another thread reads it.
+     */
+    private synchronized void compact() throws IOException {
+        commit();
+        channel.close();
+        int covered = generation;
+        start();
+        Map<String, MuaValue> variables = new LinkedHashMap<>();
+        for (String name : symbolTable.getLocalNames()) variables.put(name, symbolTable.getVariable(name));
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        Snapshot.save(Channels.newChannel(snapshot), variables);
+        compaction = background.submit(() -> {
+            try {
+                Path temporary = directory.resolve("snapshot.tmp");
+                try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(snapshot.toByteArray());
+                    while (bytes.hasRemaining()) file.write(bytes);
+                    file.force(false);
+                }
+                Files.move(temporary, directory.resolve("snapshot." + covered), StandardCopyOption.ATOMIC_MOVE);
+                for (int number : generations("snapshot"))
+                    if (number < covered) Files.deleteIfExists(directory.resolve("snapshot." + number));
+                for (int number : generations("journal"))
+                    if (number <= covered) Files.deleteIfExists(directory.resolve("journal." + number));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /*
+    Commits what is left and waits for a running compaction.
+     */
+    public void close() {
+        try {
+            commit();
+            background.shutdown();
+            background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Journal Write Error: " + directory);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int latest(String kind) throws IOException {
+        int res = 0;
+        for (int number : generations(kind)) res = Math.max(res, number);
+        return res;
+    }
+
+    private List<Integer> generations(String kind) throws IOException {
+        List<Integer> res = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(kind + ".")) continue;
+                try {
+                    res.add(Integer.parseInt(name.substring(kind.length() + 1)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return res;
+    }
+}
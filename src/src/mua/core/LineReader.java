@@ -0,0 +1,111 @@
+package src.mua.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/*
+Reads lines straight from the bytes of a stream through one growing buffer, with no regex and
+no decoding of text that is only skipped. Lines end at \n, \r or \r\n. Blanks are split on as
+bytes, which is safe for UTF-8 and the other ASCII-compatible charsets.
+ */
+public final class LineReader implements MuaInput {
+    private final InputStream stream;
+    private final Charset charset = Charset.defaultCharset();
+    private byte[] buffer = new byte[1 << 16];
+    private int pos = 0, limit = 0;
+    private boolean eof = false;
+
+    public LineReader(InputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public boolean hasNext() {
+        for (int scanned = 0; ; ) {
+            for (int i = pos + scanned; i < limit; i++)
+                if (!isBlank(buffer[i]) && buffer[i] != '\n' && buffer[i] != '\r') return true;
+            if (eof) return false;
+            scanned = limit - pos;
+            fill();
+        }
+    }
+
+    @Override
+    public String nextLine() {
+        int end = lineEnd();
+        String res = new String(buffer, pos, end - pos, charset);
+        skipTerminator(end);
+        return res;
+    }
+
+    @Override
+    public void nextWords(Consumer<String> sink) {
+        int end = lineEnd();
+        for (int i = pos; i < end; ) {
+            while (i < end && isBlank(buffer[i])) i++;
+            int start = i;
+            while (i < end && !isBlank(buffer[i])) i++;
+            if (i > start) sink.accept(new String(buffer, start, i - start, charset));
+        }
+        skipTerminator(end);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /*
+    Returns where the current line ends in buffer: at its terminator, or at limit when the input
+    ends first. Reads more of the stream until that is known.
+     */
+    private int lineEnd() {
+        for (int scanned = 0; ; ) {
+            for (int i = pos + scanned; i < limit; i++)
+                if (buffer[i] == '\n' || buffer[i] == '\r') return i;
+            if (eof) {
+                if (pos == limit) throw new NoSuchElementException("No line found");
+                return limit;
+            }
+            scanned = limit - pos;
+            fill();
+        }
+    }
+
+    private void skipTerminator(int end) {
+        pos = end;
+        if (pos == limit) return;
+        boolean carriageReturn = buffer[pos++] == '\r';
+        if (carriageReturn) {
+            if (pos == limit && !eof) fill();
+            if (pos < limit && buffer[pos] == '\n') pos++;
+        }
+    }
+
+    /*
+    Moves the unread bytes to the front, growing the buffer if they fill it, and reads what the
+    stream has after them.
+     */
+    private void fill() {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+        try {
+            int count = stream.read(buffer, limit, buffer.length - limit);
+            if (count < 0) eof = true;
+            else limit += count;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
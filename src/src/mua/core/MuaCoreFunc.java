@@ -0,0 +1,31 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+import java.util.List;
+
+class MuaCoreFunc extends MuaFunc {
+    private TerFunction<List<MuaValue>, SymbolTable, MuaInput, MuaValue> func;
+    private List<String> names;
+
+    public MuaCoreFunc(List<String> names, TerFunction<List<MuaValue>, SymbolTable, MuaInput, MuaValue> func) {
+        this.names = names;
+        this.func = func;
+    }
+
+    @Override
+    public String argName(int idx) {
+        return names.get(idx);
+    }
+
+    @Override
+    public int argCount() {
+        return names.size();
+    }
+
+    @Override
+    public MuaValue apply(List<MuaValue> argList, SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return func.apply(argList, symbolTable, input);
+    }
+}
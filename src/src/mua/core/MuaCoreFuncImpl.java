@@ -0,0 +1,423 @@
+package src.mua.core;
+
+import src.mua.core.types.*;
+import src.mua.parse.Interpreter;
+import src.mua.parse.Lexer;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.*;
+
+import static java.lang.Thread.sleep;
+
+/*
+Implementations of Mua core functions
+ */
+class MuaCoreFuncImpl {
+
+    public static final MuaCoreFunc _make = new MuaCoreFunc(Arrays.asList("name", "value"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue name = args.get(0), value = args.get(1);
+                if (!(name instanceof MuaWord)) {
+                    throw new RuntimeException("Invalid type for parameter name:" + name.getClass().getName());
+                }
+                if (value instanceof MuaNull) {
+                    throw new RuntimeException("Invalid type for parameter value:" + value.getClass().getName());
+                }
+                if (!Lexer.isValidId(name.toString())) {
+                    throw new RuntimeException("Invalid name: " + name.toString());
+                }
+                symbolTable.provideVariable(name.toString(), value);
+                symbolTable.getJit().invalidate(name.toString());
+                return MuaNull.INSTANCE;
+            });
+
+
+    public static final MuaCoreFunc _erase = new MuaCoreFunc(Arrays.asList("name"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue name = args.get(0);
+                if (!(name instanceof MuaWord)) {
+                    throw new RuntimeException("Invalid type for parameter name:" + name.getClass().getName());
+                }
+                symbolTable.eraseSymbol(name.toString());
+                symbolTable.getJit().invalidate(name.toString());
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _isname = new MuaCoreFunc(Arrays.asList("name"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue name = args.get(0);
+                if (!(name instanceof MuaWord)) {
+                    return MuaBool.valueOf(false);
+                }
+                return MuaBool.valueOf(symbolTable.isSymbol(name.toString()));
+            });
+
+    public static final MuaCoreFunc _thing = new MuaCoreFunc(Arrays.asList("name"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue name = args.get(0);
+                if (!(name instanceof MuaWord)) {
+                    throw new RuntimeException("Invalid type for parameter name:" + name.getClass().getName());
+                }
+                return symbolTable.getVariable(name.toString());
+            });
+
+    public static final MuaCoreFunc _print = new MuaCoreFunc(Arrays.asList("value"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                symbolTable.getOutput().print(args.get(0));
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _read = new MuaCoreFunc(Arrays.asList(),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                symbolTable.getOutput().flush();
+                return new MuaWord(input.nextLine());
+            });
+
+    public static final MuaCoreFunc _negative = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> MuaNum.valueOf(-args.get(0).toNumber()));
+
+    public static final MuaCoreFunc _add = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaNum.valueOf(x + y);
+            });
+
+    public static final MuaCoreFunc _sub = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaNum.valueOf(x - y);
+            });
+
+    public static final MuaCoreFunc _mul = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaNum.valueOf(x * y);
+            });
+
+    public static final MuaCoreFunc _div = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaNum.valueOf(x / y);
+            });
+
+    public static final MuaCoreFunc _mod = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaNum.valueOf(Math.round(x) % Math.round(y));
+            });
+
+    public static final MuaCoreFunc _eq = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (args.get(0) instanceof MuaList || args.get(1) instanceof MuaList){
+                    return MuaBool.valueOf(false);
+                }
+                else if (args.get(0) instanceof MuaWord && args.get(1) instanceof MuaWord) {
+                    String x = args.get(0).toString(), y = args.get(1).toString();
+                    return MuaBool.valueOf(x.equals(y));
+                } else {
+                    MuaValue x = args.get(0), y = args.get(1);
+                    if (!x.isNumeric() || !y.isNumeric()) return MuaBool.valueOf(false);
+                    return MuaBool.valueOf(x.toNumber() == y.toNumber());
+                }
+            });
+
+    public static final MuaCoreFunc _gt = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaBool.valueOf(x > y);
+            });
+
+    public static final MuaCoreFunc _lt = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double x = args.get(0).toNumber(), y = args.get(1).toNumber();
+                return MuaBool.valueOf(x < y);
+            });
+
+    public static final MuaCoreFunc _and = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaBool) || !(args.get(1) instanceof MuaBool)) {
+                    throw new RuntimeException("Invalid type for boolean calculus:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+                boolean x = ((MuaBool) args.get(0)).toBoolean(), y = ((MuaBool) args.get(1)).toBoolean();
+                return MuaBool.valueOf(x & y);
+            });
+
+    public static final MuaCoreFunc _or = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaBool) || !(args.get(1) instanceof MuaBool)) {
+                    throw new RuntimeException("Invalid type for boolean calculus:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+                boolean x = ((MuaBool) args.get(0)).toBoolean(), y = ((MuaBool) args.get(1)).toBoolean();
+                return MuaBool.valueOf(x | y);
+            });
+
+    public static final MuaCoreFunc _not = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaBool)) {
+                    throw new RuntimeException("Invalid type for boolean calculus:" + args.get(0).getClass().getName());
+                }
+                boolean x = ((MuaBool) args.get(0)).toBoolean();
+                return MuaBool.valueOf(!x);
+            });
+
+    public static final MuaCoreFunc _if = new MuaCoreFunc(Arrays.asList("condition", "x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaBool)) {
+                    throw new RuntimeException("Invalid type for boolean calculus:" + args.get(0).getClass().getName());
+                }
+                boolean condition = ((MuaBool) args.get(0)).toBoolean();
+                if (condition)
+                    return Interpreter.evalBlock(args.get(1), symbolTable, input);
+                else return Interpreter.evalBlock(args.get(2), symbolTable, input);
+            });
+
+    public static final MuaCoreFunc _output = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                symbolTable.exit(args.get(0));
+                return args.get(0);
+            });
+
+    public static final MuaCoreFunc _repeat = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaNum) || !(args.get(1) instanceof MuaList)) {
+                    throw new RuntimeException("Invalid type for repeat:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+                int x = (int) Math.round(args.get(0).toNumber());
+                MuaValue res = MuaNull.INSTANCE;
+                MuaValue code = args.get(1);
+                for (int i = 0; i < x && !symbolTable.isExiting(); i++) {
+                    res = Interpreter.evalBlock(code, symbolTable, input);
+                }
+                return res;
+            });
+
+    public static final MuaCoreFunc _export = new MuaCoreFunc(Arrays.asList("name"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue name = args.get(0);
+                symbolTable.exportVariable(name.toString());
+                symbolTable.getJit().invalidate(name.toString());
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _isnumber = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                return MuaBool.valueOf(args.get(0) instanceof MuaNum);
+            });
+
+    public static final MuaCoreFunc _isword = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                return MuaBool.valueOf(args.get(0) instanceof MuaWord);
+            });
+
+    public static final MuaCoreFunc _islist = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                return MuaBool.valueOf(args.get(0) instanceof MuaList);
+            });
+
+    public static final MuaCoreFunc _isbool = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                return MuaBool.valueOf(args.get(0) instanceof MuaBool);
+            });
+
+    public static final MuaCoreFunc _isempty = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue x = args.get(0);
+                if (x instanceof MuaList) return MuaBool.valueOf(((MuaList) x).size() == 0);
+                else if (x instanceof MuaWord) return MuaBool.valueOf(x.toString().length() == 0);
+                else throw new RuntimeException("Invalid type for isempty:" + x.getClass().getName());
+            });
+
+    public static final MuaCoreFunc _readlist = new MuaCoreFunc(Arrays.asList(),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                List<MuaValue> list = new ArrayList<>();
+                symbolTable.getOutput().flush();
+                input.nextWords(word -> list.add(new MuaWord(word)));
+                return new MuaList(list);
+            });
+
+    public static final MuaCoreFunc _word = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaWord) || args.get(1) instanceof MuaList || args.get(1) instanceof MuaNull) {
+                    throw new RuntimeException("Invalid type for function word:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+                String x = args.get(0).toString(), y = args.get(1).toString();
+                return new MuaWord(x + y);
+            });
+
+    public static final MuaCoreFunc _list = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (args.get(0) instanceof MuaNull || args.get(1) instanceof MuaNull) {
+                    throw new RuntimeException("Invalid type for function list:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+
+                MuaValue x = args.get(0), y = args.get(1);
+                ArrayList<MuaValue> list = new ArrayList<>();
+                list.add(x);
+                list.add(y);
+                return new MuaList(list);
+            });
+
+    public static final MuaCoreFunc _sentence = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (args.get(0) instanceof MuaNull || args.get(1) instanceof MuaNull) {
+                    throw new RuntimeException("Invalid type for function list:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+
+                MuaValue x = args.get(0), y = args.get(1);
+                MuaList list = x instanceof MuaList ? (MuaList) x : new MuaList(Collections.singletonList(x));
+                if (y instanceof MuaList) return list.concat((MuaList) y);
+                else return list.append(y);
+            });
+
+    public static final MuaCoreFunc _join = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                if (!(args.get(0) instanceof MuaList) || args.get(1) instanceof MuaNull) {
+                    throw new RuntimeException("Invalid type for join:" + args.get(0).getClass().getName() + args.get(1).getClass().getName());
+                }
+
+                MuaList x = (MuaList) args.get(0);
+                MuaValue y = args.get(1);
+                return x.append(y);
+            });
+
+    public static final MuaCoreFunc _first = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue x = args.get(0);
+                if (x instanceof MuaList) return ((MuaList) x).get(0);
+                else return new MuaWord(x.toString().substring(0, 1));
+            });
+
+    public static final MuaCoreFunc _last = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue x = args.get(0);
+                if (x instanceof MuaList) return ((MuaList) x).get(((MuaList) x).size() - 1);
+                else if (x instanceof MuaWord) return new MuaWord(x.toString().substring(x.toString().length() - 1));
+                else throw new RuntimeException("Invalid type for last:" + x.getClass().getName());
+            });
+
+    public static final MuaCoreFunc _butfirst = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue x = args.get(0);
+                if (x instanceof MuaList) return ((MuaList) x).butFirst();
+                else if (x instanceof MuaWord) return new MuaWord(x.toString().substring(1));
+                else throw new RuntimeException("Invalid type for butfirst:" + x.getClass().getName());
+            });
+
+    public static final MuaCoreFunc _butlast = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                MuaValue x = args.get(0);
+                if (x instanceof MuaList) return ((MuaList) x).butLast();
+                else if (x instanceof MuaWord) return new MuaWord(x.toString().substring(x.toString().length() - 1));
+                else throw new RuntimeException("Invalid type for butlast:" + x.getClass().getName());
+            });
+
+    public static final MuaCoreFunc _sum = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double res = 0;
+                for (double item : numbers(args.get(0), "sum")) res += item;
+                return MuaNum.valueOf(res);
+            });
+
+    public static final MuaCoreFunc _product = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double res = 1;
+                for (double item : numbers(args.get(0), "product")) res *= item;
+                return MuaNum.valueOf(res);
+            });
+
+    public static final MuaCoreFunc _max = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double[] x = numbers(args.get(0), "max");
+                if (x.length == 0) throw new RuntimeException("Empty list for max");
+                double res = x[0];
+                for (double item : x) res = Math.max(res, item);
+                return MuaNum.valueOf(res);
+            });
+
+    public static final MuaCoreFunc _min = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double[] x = numbers(args.get(0), "min");
+                if (x.length == 0) throw new RuntimeException("Empty list for min");
+                double res = x[0];
+                for (double item : x) res = Math.min(res, item);
+                return MuaNum.valueOf(res);
+            });
+
+    public static final MuaCoreFunc _dot = new MuaCoreFunc(Arrays.asList("x", "y"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                double[] x = numbers(args.get(0), "dot"), y = numbers(args.get(1), "dot");
+                if (x.length != y.length)
+                    throw new RuntimeException("Lists of different length for dot:" + x.length + " " + y.length);
+                double res = 0;
+                for (int i = 0; i < x.length; i++) res += x[i] * y[i];
+                return MuaNum.valueOf(res);
+            });
+
+    private static double[] numbers(MuaValue x, String func) {
+        double[] res = x instanceof MuaList ? ((MuaList) x).toNumbers() : null;
+        if (res == null) throw new RuntimeException("Invalid type for " + func + ":" + x.getClass().getName());
+        return res;
+    }
+
+    public static final MuaCoreFunc _random = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> MuaNum.valueOf(Math.random() * args.get(0).toNumber()));
+
+    public static final MuaCoreFunc _int = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> MuaNum.valueOf(Math.floor(args.get(0).toNumber())));
+
+    public static final MuaCoreFunc _sqrt = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> MuaNum.valueOf(Math.sqrt(args.get(0).toNumber())));
+
+    public static final MuaCoreFunc _wait = new MuaCoreFunc(Arrays.asList("x"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                try {
+                    Thread.sleep((long) args.get(0).toNumber());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("Failed to sleep!");
+                }
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _poall = new MuaCoreFunc(Arrays.asList(),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                Set<String> names = symbolTable.getLocalNames();
+                for (String name: names) symbolTable.getOutput().println(name);
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _erall = new MuaCoreFunc(Arrays.asList(),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                symbolTable.eraseLocalVariables();
+                symbolTable.getJit().invalidateAll();
+                return MuaNull.INSTANCE;
+            });
+
+    public static final MuaCoreFunc _save = new MuaCoreFunc(Arrays.asList("filename"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                try {
+                    Snapshot.save(args.get(0).toString(), symbolTable);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException("File Write Error: " + args.get(0).toString());
+                }
+                return MuaNull.INSTANCE;
+            });
+
+    // Loads a snapshot written by save, or runs the file as source if it is not one
+    public static final MuaCoreFunc _load = new MuaCoreFunc(Arrays.asList("filename"),
+            (List<MuaValue> args, SymbolTable symbolTable, MuaInput input) -> {
+                String filePath = args.get(0).toString();
+                boolean snapshot;
+                try {
+                    snapshot = Snapshot.isSnapshot(filePath);
+                    if (snapshot) Snapshot.load(filePath, symbolTable);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException("File Read Error: " + filePath);
+                }
+                if (!snapshot) Interpreter.acceptFile(filePath, symbolTable, input);
+                return MuaNull.INSTANCE;
+            });
+
+}
@@ -0,0 +1,61 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+import src.mua.parse.Interpreter;
+
+import java.text.ParseException;
+import java.util.List;
+
+public class MuaCustomFunc extends MuaFunc {
+    private String name;
+    private MuaList def;
+    private MuaList names;
+    private MuaList code;
+    private FrameLayout layout;
+
+    public MuaCustomFunc(String name, MuaValue def) {
+        this.name = name;
+        this.def = (MuaList) def;
+        names = (MuaList) this.def.get(0);
+        code = (MuaList) this.def.get(1);
+    }
+
+    public MuaList getDef() {
+        return def;
+    }
+
+    public MuaList getCode() {
+        return code;
+    }
+
+    public FrameLayout getLayout(SymbolTable symbolTable) {
+        if (layout == null) layout = FrameLayout.of(names, code, symbolTable);
+        return layout;
+    }
+
+    @Override
+    public String argName(int idx) {
+        return names.get(idx).toString();
+    }
+
+    @Override
+    public int argCount() {
+        return names.size();
+    }
+
+    @Override
+    public MuaValue apply(List<MuaValue> argList, SymbolTable parentSymbolTable, MuaInput input) throws ParseException {
+        MuaCustomFunc func = this;
+        MuaValue[] args = argList.toArray(new MuaValue[0]);
+        while (true) {
+            MuaValue res = parentSymbolTable.getJit().invoke(func.name, func.def, args, parentSymbolTable);
+            if (res != null) return res;
+            SymbolTable symbolTable = func.getLayout(parentSymbolTable).newFrame(parentSymbolTable, args);
+            res = Interpreter.evalBody(func.code, symbolTable, input);
+            if (!(res instanceof TailCall)) return res;
+            func = ((TailCall) res).func;
+            args = ((TailCall) res).args;
+        }
+    }
+}
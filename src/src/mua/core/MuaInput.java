@@ -0,0 +1,25 @@
+package src.mua.core;
+
+import java.util.function.Consumer;
+
+/*
+The input that Main reads statements from and read and readlist read values from.
+ */
+public interface MuaInput {
+    /*
+    Whether anything but blanks is left. Nothing is consumed.
+     */
+    boolean hasNext();
+
+    /*
+    Returns the rest of the current line without its terminator.
+    Throws NoSuchElementException at the end of the input.
+     */
+    String nextLine();
+
+    /*
+    Passes each blank-separated word of the rest of the current line to sink, then moves past the line.
+    Throws NoSuchElementException at the end of the input.
+     */
+    void nextWords(Consumer<String> sink);
+}
@@ -0,0 +1,104 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/*
+Where print and poall write. Text is gathered in a buffer and handed to the stream when the
+buffer fills, when flush is called (before read and readlist, and at exit), or after every line
+when line buffered, so printing costs one write per buffer instead of one per value.
+ */
+public final class MuaOutput {
+    private static final int CAPACITY = 1 << 13;
+
+    private final Writer writer;
+    private final char[] buffer = new char[CAPACITY];
+    private int count = 0;
+    private boolean lineBuffered = false;
+
+    public MuaOutput(OutputStream stream) {
+        writer = new OutputStreamWriter(stream, Charset.defaultCharset());
+    }
+
+    public void setLineBuffered(boolean lineBuffered) {
+        this.lineBuffered = lineBuffered;
+    }
+
+    /*
+    Writes a value and ends the line. A list is written without its outer brackets, item by item,
+    so it is never turned into one big string first.
+     */
+    public void print(MuaValue value) {
+        if (value instanceof MuaList) writeItems((MuaList) value);
+        else write(value.toString());
+        newLine();
+    }
+
+    public void println(String text) {
+        write(text);
+        newLine();
+    }
+
+    private void writeValue(MuaValue value) {
+        if (value instanceof MuaList) {
+            write('[');
+            writeItems((MuaList) value);
+            write(']');
+        } else write(value.toString());
+    }
+
+    private void writeItems(MuaList list) {
+        boolean first = true;
+        for (MuaValue item : list) {
+            if (!first) write(' ');
+            writeValue(item);
+            first = false;
+        }
+    }
+
+    private void newLine() {
+        write('\n');
+        if (lineBuffered) flush();
+    }
+
+    private void write(char ch) {
+        if (count == buffer.length) drain();
+        buffer[count++] = ch;
+    }
+
+    private void write(String text) {
+        int length = text.length();
+        for (int start = 0; start < length; ) {
+            if (count == buffer.length) drain();
+            int end = Math.min(length, start + buffer.length - count);
+            text.getChars(start, end, buffer, count);
+            count += end - start;
+            start = end;
+        }
+    }
+
+    private void drain() {
+        try {
+            writer.write(buffer, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+
+    public void flush() {
+        drain();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package src.mua.core;
+
+import src.mua.core.types.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+The binary workspace format written by save and read by load:
+
+    "MUAW" version:int count:int (name:word value)*
+
+Each value starts with a tag byte. Numbers are raw IEEE doubles and words are a length and
+UTF-8 bytes. Lists are numbered in the order they are written, and a list written before is
+written again only as a reference to its number, so shared sublists are stored once.
+Ints and doubles are big-endian.
+ */
+final class Snapshot {
+    private static final byte[] MAGIC = {'M', 'U', 'A', 'W'};
+    private static final int VERSION = 1;
+    private static final byte NULL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, WORD = 4, LIST = 5, REFERENCE = 6;
+    private static final int BUFFER = 1 << 20;
+
+    private Snapshot() {
+    }
+
+    static void save(String filePath, SymbolTable symbolTable) throws IOException {
+        Map<String, MuaValue> variables = new LinkedHashMap<>();
+        for (String name : symbolTable.getLocalNames()) variables.put(name, symbolTable.getVariable(name));
+        save(Paths.get(filePath), variables);
+    }
+
+    static void save(Path path, Map<String, MuaValue> variables) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            save(channel, variables);
+        }
+    }
+
+    static void save(WritableByteChannel channel, Map<String, MuaValue> variables) throws IOException {
+        Writer writer = new Writer(channel);
+        writer.reserve(MAGIC.length + 8);
+        writer.buffer.put(MAGIC).putInt(VERSION).putInt(variables.size());
+        for (Map.Entry<String, MuaValue> variable : variables.entrySet()) {
+            writer.writeWord(variable.getKey());
+            writer.writeValue(variable.getValue());
+        }
+        writer.drain();
+    }
+
+    static boolean isSnapshot(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            while (head.hasRemaining() && channel.read(head) >= 0) ;
+            return !head.hasRemaining() && Arrays.equals(head.array(), MAGIC);
+        }
+    }
+
+    /*
+    Makes every variable of the snapshot in symbolTable, as make would.
+     */
+    static void load(String filePath, SymbolTable symbolTable) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            Reader reader = new Reader(map(channel, filePath));
+            reader.buffer.position(MAGIC.length);
+            int version = reader.buffer.getInt();
+            if (version != VERSION)
+                throw new RuntimeException("Unsupported snapshot version " + version + ": " + filePath);
+            for (int count = reader.buffer.getInt(); count > 0; count--) {
+                String name = reader.readWord();
+                symbolTable.provideVariable(name, reader.readValue());
+                symbolTable.getJit().invalidate(name);
+            }
+        }
+    }
+
+    static MappedByteBuffer map(FileChannel channel, String filePath) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new RuntimeException("File too large to map: " + filePath);
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /*
+    Writes values through a buffer to a channel. Lists are shared within what is written
+    until forget is called.
+     */
+    static final class Writer {
+        final WritableByteChannel channel;
+        final ByteBuffer buffer;
+        final Map<MuaList, Integer> lists = new IdentityHashMap<>();
+        long drained = 0;
+
+        Writer(WritableByteChannel channel) {
+            this(channel, ByteBuffer.allocateDirect(BUFFER));
+        }
+
+        Writer(WritableByteChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void writeValue(MuaValue value) throws IOException {
+            reserve(9);
+            if (value instanceof MuaNum) buffer.put(NUMBER).putDouble(value.toNumber());
+            else if (value instanceof MuaBool) buffer.put(((MuaBool) value).value ? TRUE : FALSE);
+            else if (value instanceof MuaList) writeList((MuaList) value);
+            else if (value instanceof MuaNull) buffer.put(NULL);
+            else {
+                buffer.put(WORD);
+                writeWord(value.toString());
+            }
+        }
+
+        void forget() {
+            lists.clear();
+        }
+
+        private void writeList(MuaList list) throws IOException {
+            Integer id = lists.get(list);
+            if (id != null) {
+                buffer.put(REFERENCE).putInt(id);
+                return;
+            }
+            lists.put(list, lists.size());
+            buffer.put(LIST).putInt(list.size());
+            for (MuaValue item : list) writeValue(item);
+        }
+
+        void writeWord(String word) throws IOException {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            reserve(4);
+            buffer.putInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            for (int start = 0; start < bytes.length; ) {
+                if (!buffer.hasRemaining()) drain();
+                int count = Math.min(buffer.remaining(), bytes.length - start);
+                buffer.put(bytes, start, count);
+                start += count;
+            }
+        }
+
+        void reserve(int count) throws IOException {
+            if (buffer.remaining() < count) drain();
+        }
+
+        long written() {
+            return drained + buffer.position();
+        }
+
+        void drain() throws IOException {
+            drained += buffer.position();
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+    static final class Reader {
+        final ByteBuffer buffer;
+        final List<MuaList> lists = new ArrayList<>();
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        MuaValue readValue() {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NULL:
+                    return MuaNull.INSTANCE;
+                case FALSE:
+                    return MuaBool.FALSE;
+                case TRUE:
+                    return MuaBool.TRUE;
+                case NUMBER:
+                    return MuaNum.valueOf(buffer.getDouble());
+                case WORD:
+                    return new MuaWord(readWord());
+                case LIST:
+                    int id = lists.size();
+                    lists.add(null);
+                    MuaValue[] items = new MuaValue[buffer.getInt()];
+                    for (int i = 0; i < items.length; i++) items[i] = readValue();
+                    MuaList list = new MuaList(Arrays.asList(items));
+                    lists.set(id, list);
+                    return list;
+                case REFERENCE:
+                    return lists.get(buffer.getInt());
+                default:
+                    throw new RuntimeException("Corrupt snapshot: unknown tag " + tag);
+            }
+        }
+
+        void forget() {
+            lists.clear();
+        }
+
+        String readWord() {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -3,74 +3,214 @@ package src.mua.core;
 import src.mua.core.types.MuaList;
 import src.mua.core.types.MuaNull;
 import src.mua.core.types.MuaValue;
+import src.mua.jit.MuaJit;
+import src.mua.vm.MuaVM;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class SymbolTable {
-    private HashMap<String, MuaValue> localVarTable = new HashMap<>();
+    static final class Version {
+        int value;
+        boolean retired; // dropped from the table when its name was erased; holders fetch a new one
+    }
+
+    private HashMap<String, MuaValue> localVarTable; // in a function frame, only names without a slot
+    private FrameLayout layout;
+    private MuaValue[] slots;
     private HashMap<String, MuaValue> globalVarTable;
-    private HashMap<String, MuaFunc> coreFuncTable;
-    private HashMap<String, MuaFunc> operatorTable;
-    private MuaCoreFuncImpl muaCoreFuncImpl;
+    private MuaJit jit;
+    private MuaVM vm; // set when statements run on the VM
+    private HashMap<String, Version> versions;
+    private Symbols symbols;
+    private MuaOutput output;
+    private Journal journal; // set when the workspace is persistent
+    private MuaValue returnValue; // set by output
+    private boolean exiting; // set by output and stop, ends every block running in this frame
 
-    public SymbolTable() throws IllegalAccessException {
+    private static final Map<String, MuaFunc> operatorTable = Map.of(
+            "+", MuaCoreFuncImpl._add,
+            "-", MuaCoreFuncImpl._sub,
+            "*", MuaCoreFuncImpl._mul,
+            "/", MuaCoreFuncImpl._div,
+            "%", MuaCoreFuncImpl._mod,
+            "-u", MuaCoreFuncImpl._negative);
+
+    public SymbolTable() {
+        this(new MuaOutput(System.out));
+    }
+
+    /*
+    A top-level table writing to output. Tables share the builtins, but each gets its own copy
+    of the constant lists, since a list keeps the code compiled from it with the symbol ids of
+    one table.
+     */
+    public SymbolTable(MuaOutput output) {
+        localVarTable = new HashMap<>();
         globalVarTable = localVarTable;
-        coreFuncTable = new HashMap<>();
-        muaCoreFuncImpl = new MuaCoreFuncImpl();
-        MuaConsts muaConsts = new MuaConsts();
-        for (Field field : MuaCoreFuncImpl.class.getFields())
-            coreFuncTable.put(field.getName().substring(1), (MuaFunc) field.get(muaCoreFuncImpl));
-        for (Field field : MuaConsts.class.getFields())
-            localVarTable.put(field.getName().substring(1), (MuaValue) field.get(muaConsts));
-        operatorTable =new HashMap<>();
-        operatorTable.put("+", coreFuncTable.get("add"));
-        operatorTable.put("-", coreFuncTable.get("sub"));
-        operatorTable.put("*", coreFuncTable.get("mul"));
-        operatorTable.put("/", coreFuncTable.get("div"));
-        operatorTable.put("%", coreFuncTable.get("mod"));
-        operatorTable.put("-u", coreFuncTable.get("negative"));
-    }
-
-    public SymbolTable(SymbolTable table) {
+        jit = new MuaJit();
+        versions = new HashMap<>();
+        symbols = new Symbols();
+        this.output = output;
+        for (int i = 0; i < Builtins.CONSTS.length; i++)
+            localVarTable.put(Builtins.CONST_NAMES[i], copyLists(Builtins.CONSTS[i]));
+    }
+
+    private static MuaValue copyLists(MuaValue value) {
+        if (!(value instanceof MuaList)) return value;
+        List<MuaValue> items = new ArrayList<>();
+        for (MuaValue item : (MuaList) value) items.add(copyLists(item));
+        return new MuaList(items);
+    }
+
+    SymbolTable(SymbolTable table, FrameLayout layout) {
         this.globalVarTable = table.globalVarTable;
-        this.coreFuncTable = table.coreFuncTable;
-        this.muaCoreFuncImpl = table.muaCoreFuncImpl;
-        this.operatorTable = table.operatorTable;
+        this.jit = table.jit;
+        this.vm = table.vm;
+        this.versions = table.versions;
+        this.symbols = table.symbols;
+        this.output = table.output;
+        this.journal = table.journal;
+        this.layout = layout;
+        this.slots = new MuaValue[layout.size()];
+    }
+
+    public Symbols getSymbols() {
+        return symbols;
+    }
+
+    public MuaOutput getOutput() {
+        return output;
+    }
+
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    public MuaValue getSlot(int slot) {
+        return slots[slot];
+    }
+
+    public void setSlot(int slot, MuaValue value) {
+        slots[slot] = value;
+    }
+
+    private int slotOf(String name) {
+        return layout == null ? -1 : layout.slotOf(name);
+    }
+
+    Version versionOf(String name) {
+        return versions.computeIfAbsent(name, key -> new Version());
+    }
+
+    private void bump(String name) {
+        Version version = versions.get(name);
+        if (version != null) version.value++;
+    }
+
+    /*
+    Drops the version of an erased name, so names that come and go do not pile up in the table.
+     */
+    private void retire(Version version) {
+        version.value++;
+        version.retired = true;
+    }
+
+    boolean hasDynamicLocals() {
+        return localVarTable != null && localVarTable != globalVarTable;
+    }
+
+    public MuaJit getJit() {
+        return jit;
+    }
+
+    public MuaVM getVm() {
+        return vm;
+    }
+
+    public void setVm(MuaVM vm) {
+        this.vm = vm;
     }
 
     public void provideVariable(String name, MuaValue value) {
-        if (coreFuncTable.containsKey(name))
+        if (isReserved(name))
             throw new RuntimeException("Invalid variable name: reserved word");
-        localVarTable.put(name, value);
+        int slot = slotOf(name);
+        if (slot >= 0) slots[slot] = value;
+        else {
+            if (localVarTable == null) localVarTable = new HashMap<>();
+            localVarTable.put(name, value);
+            bump(name);
+            if (journal != null && localVarTable == globalVarTable) journal.make(name, value);
+        }
     }
 
     public void exportVariable(String name) {
         MuaValue value = getVariable(name);
         globalVarTable.put(name, value);
+        bump(name);
+        if (journal != null) journal.make(name, value);
     }
 
     public MuaValue getVariable(String name) {
-        if (localVarTable.containsKey(name)) return localVarTable.get(name);
+        int slot = slotOf(name);
+        if (slot >= 0 && slots[slot] != null) return slots[slot];
+        if (localVarTable != null && localVarTable.containsKey(name)) return localVarTable.get(name);
         else if (globalVarTable.containsKey(name)) return globalVarTable.get(name);
-        else return new MuaNull();
+        else return MuaNull.INSTANCE;
+    }
+
+    public MuaValue getGlobalVariable(String name) {
+        if (globalVarTable.containsKey(name)) return globalVarTable.get(name);
+        else return MuaNull.INSTANCE;
     }
 
     public void eraseSymbol(String name) {
-        if (localVarTable.containsKey(name)) localVarTable.remove(name);
+        int slot = slotOf(name);
+        if (slot >= 0 && slots[slot] != null) slots[slot] = null;
+        else if (localVarTable != null && localVarTable.containsKey(name)) {
+            localVarTable.remove(name);
+            Version version = versions.remove(name);
+            if (version != null) retire(version);
+            if (journal != null && localVarTable == globalVarTable) journal.erase(name);
+        }
         else throw new RuntimeException("Word " + name + " is not a variable name");
     }
 
     public MuaFunc getFunction(String name) {
-        if (!isFunction(name)) throw new RuntimeException("Word " + name + " is not a function name");
-        if (coreFuncTable.containsKey(name)) return coreFuncTable.get(name);
-        else if (operatorTable.containsKey(name)) return operatorTable.get(name);
-        else return new MuaCustomFunc(getVariable(name));
+        MuaFunc func = findFunction(name);
+        if (func == null) throw new RuntimeException("Word " + name + " is not a function name");
+        return func;
+    }
+
+    MuaFunc findFunction(String name) {
+        int builtin = Builtins.indexOf(name);
+        if (builtin >= 0) return Builtins.FUNCS[builtin];
+        MuaFunc func = operatorTable.get(name);
+        if (func != null) return func;
+        MuaValue value = getVariable(name);
+        return isCustomFunction(value) ? new MuaCustomFunc(name, value) : null;
     }
 
     public boolean isFunction(String name) {
-        return coreFuncTable.containsKey(name)||operatorTable.containsKey(name) || (isCustomFunction(getVariable(name)));
+        return isCoreFunction(name) || (isCustomFunction(getVariable(name)));
+    }
+
+    public boolean isCoreFunction(String name) {
+        return isReserved(name) || operatorTable.containsKey(name);
+    }
+
+    public boolean isReserved(String name) {
+        return Builtins.indexOf(name) >= 0;
     }
 
     public boolean isCustomFunction(MuaValue value) {
@@ -82,28 +222,72 @@ public class SymbolTable {
         } else return false;
     }
 
+    /*
+    Called by the parser for every identifier, so a user function's parameter count is read from
+    its definition instead of wrapping it in a MuaCustomFunc as findFunction does.
+     */
     public int getFunctionArgCount(String name) {
-        if (!isFunction(name)) return -1;
-        else return getFunction(name).argCount();
+        int builtin = Builtins.indexOf(name);
+        if (builtin >= 0) return Builtins.FUNCS[builtin].argCount();
+        MuaFunc func = operatorTable.get(name);
+        if (func != null) return func.argCount();
+        MuaValue value = getVariable(name);
+        return isCustomFunction(value) ? ((MuaList) ((MuaList) value).get(0)).size() : -1;
     }
 
     public boolean isSymbol(String name) {
-        return globalVarTable.containsKey(name) || localVarTable.containsKey(name) || coreFuncTable.containsKey(name);
+        return globalVarTable.containsKey(name) || isLocal(name) || isReserved(name);
+    }
+
+    private boolean isLocal(String name) {
+        int slot = slotOf(name);
+        if (slot >= 0 && slots[slot] != null) return true;
+        return localVarTable != null && localVarTable.containsKey(name);
+    }
+
+    /*
+    Called by output with its value and by stop with null. Blocks running in this frame check
+    isExiting after each statement and end, up to the function call that made the frame.
+     */
+    public void exit(MuaValue value) {
+        if (value != null) returnValue = value;
+        exiting = true;
+    }
+
+    public boolean isExiting() {
+        return exiting;
+    }
+
+    /*
+    At the top level an output or stop inside a statement ends only that statement.
+     */
+    public void clearExit() {
+        exiting = false;
+        returnValue = null;
     }
 
     public boolean hasReturnValue() {
-        return localVarTable.containsKey("_output");
+        return returnValue != null;
     }
 
     public MuaValue getReturnValue() {
-        return localVarTable.get("_output");
+        return returnValue;
     }
 
     public Set<String> getLocalNames(){
-        return localVarTable.keySet();
+        if (layout == null) return localVarTable.keySet();
+        Set<String> names = new LinkedHashSet<>();
+        for (int i = 0; i < slots.length; i++)
+            if (slots[i] != null) names.add(layout.nameOf(i));
+        if (localVarTable != null) names.addAll(localVarTable.keySet());
+        return names;
     }
 
     public void eraseLocalVariables() {
-        localVarTable.clear();
+        if (slots != null) Arrays.fill(slots, null);
+        if (localVarTable != null) localVarTable.clear();
+        for (Version version : versions.values()) retire(version);
+        versions.clear();
+        if (journal != null && localVarTable == globalVarTable) journal.clear();
     }
 }
@@ -0,0 +1,90 @@
+package src.mua.core;
+
+import java.util.Arrays;
+
+/*
+Interns the text of tokens to small integer ids, shared by all lexers of a symbol table.
+Text is hashed straight from the source, so a name seen before costs no allocation.
+The ids of the predefined symbols below are fixed, and the names of the builtin functions follow
+them in the order of Builtins.NAMES, so a builtin's id is the same in every interpreter.
+ */
+public final class Symbols {
+    public static final int STOP = 0, TRUE = 1, FALSE = 2, OPEN_BRACKET = 3, CLOSE_BRACKET = 4,
+            OPEN_PAREN = 5, CLOSE_PAREN = 6, MINUS = 7, COLON = 8, TIMES = 9, DIVIDE = 10, PLUS = 11, MODULO = 12;
+    private static final String[] predefined = {"stop", "true", "false", "[", "]", "(", ")", "-", ":", "*", "/", "+", "%"};
+    public static final int FIRST_BUILTIN = predefined.length;
+
+    private String[] names = new String[128];
+    private int[] hashes = new int[128];
+    private int[] table = new int[256]; // id + 1 per bucket, 0 when empty
+    private int count = 0;
+
+    public Symbols() {
+        for (String name : predefined) intern(name);
+        for (String name : Builtins.NAMES) intern(name);
+    }
+
+    // index in Builtins of the function with symbol id, or -1 if it is not a builtin
+    static int builtinIndex(int id) {
+        int index = id - FIRST_BUILTIN;
+        return index >= 0 && index < Builtins.NAMES.length ? index : -1;
+    }
+
+    public int intern(char[] text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + text[i];
+        int mask = table.length - 1;
+        for (int bucket = mix(hash) & mask; ; bucket = (bucket + 1) & mask) {
+            int id = table[bucket] - 1;
+            if (id < 0) break;
+            if (hashes[id] == hash && matches(names[id], text, start, end)) return id;
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        names[count] = new String(text, start, end - start);
+        hashes[count] = hash;
+        insert(count, hash);
+        count++;
+        if (count * 2 > table.length) rehash();
+        return count - 1;
+    }
+
+    public int intern(String name) {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private static boolean matches(String name, char[] text, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != text[start + i]) return false;
+        return true;
+    }
+
+    // String hashes of similar names are close together, spread them before linear probing
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void insert(int id, int hash) {
+        int mask = table.length - 1;
+        int bucket = mix(hash) & mask;
+        while (table[bucket] != 0) bucket = (bucket + 1) & mask;
+        table[bucket] = id + 1;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        for (int id = 0; id < count; id++) insert(id, hashes[id]);
+    }
+}
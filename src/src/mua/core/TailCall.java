@@ -0,0 +1,17 @@
+package src.mua.core;
+
+import src.mua.core.types.MuaValue;
+
+/*
+What `output <call>` evaluates to in tail position of a function body, in place of the call's value.
+MuaCustomFunc.apply makes the call in its own loop, so recursion does not grow the Java stack.
+ */
+public final class TailCall extends MuaValue {
+    final MuaCustomFunc func;
+    final MuaValue[] args;
+
+    public TailCall(MuaCustomFunc func, MuaValue[] args) {
+        this.func = func;
+        this.args = args;
+    }
+}
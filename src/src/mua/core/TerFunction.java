@@ -0,0 +1,8 @@
+package src.mua.core;
+
+import java.text.ParseException;
+
+@FunctionalInterface
+interface TerFunction<One, Two, Three, Res> { //Ternary Function
+    Res apply(One one, Two two, Three three) throws ParseException;
+}
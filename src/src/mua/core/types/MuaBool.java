@@ -1,11 +1,18 @@
 package src.mua.core.types;
 
 public class MuaBool extends MuaValue {
+    public static final MuaBool TRUE = new MuaBool(true), FALSE = new MuaBool(false);
+
     public final boolean  value;
-    public MuaBool(boolean value){
+    private MuaBool(boolean value){
         super();
         this.value = value;
     }
+
+    public static MuaBool valueOf(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     @Override
     public String toString() {
         return value?"true":"false";
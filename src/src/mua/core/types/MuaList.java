@@ -1,33 +1,186 @@
 package src.mua.core.types;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
-public class MuaList extends MuaValue {
-    public final ArrayList<MuaValue> value;
+/*
+An immutable slice [from, to) of an array that is shared between lists. butFirst and butLast
+just narrow the slice. append and concat write past the end in place when this list ends
+where the array's used part ends, so building a list one item at a time is amortized O(1).
+ */
+public class MuaList extends MuaValue implements Iterable<MuaValue> {
+    private static final class Store {
+        MuaValue[] items;
+        int used;
+
+        Store(MuaValue[] items, int used) {
+            this.items = items;
+            this.used = used;
+        }
+    }
+
+    private final Store store;
+    private final int from, to;
+    private Object[] cached; // what the interpreter derived from this list, at most one of each class
+    private double[] numbers;
+    private boolean numbersKnown;
 
     public MuaList(final List<MuaValue> value) {
         super();
-        this.value = new ArrayList<>(value);
+        MuaValue[] items = value.toArray(new MuaValue[0]);
+        this.store = new Store(items, items.length);
+        this.from = 0;
+        this.to = items.length;
+    }
+
+    private MuaList(Store store, int from, int to) {
+        this.store = store;
+        this.from = from;
+        this.to = to;
     }
 
     public int size() {
-        return this.value.size();
+        return to - from;
     }
 
     public MuaValue get(int idx) {
-        return this.value.get(idx);
+        if (idx < 0 || idx >= size()) throw new IndexOutOfBoundsException("Index " + idx + " out of bounds for length " + size());
+        return store.items[from + idx];
+    }
+
+    public MuaList butFirst() {
+        if (size() == 0) throw new IllegalArgumentException("fromIndex(1) > toIndex(0)");
+        return new MuaList(store, from + 1, to);
+    }
+
+    public MuaList butLast() {
+        if (size() == 0) throw new IndexOutOfBoundsException("toIndex = -1");
+        return new MuaList(store, from, to - 1);
+    }
+
+    public MuaList slice(int fromIdx, int toIdx) {
+        if (fromIdx < 0 || toIdx > size() || fromIdx > toIdx)
+            throw new IndexOutOfBoundsException("Slice [" + fromIdx + ", " + toIdx + ") out of bounds for length " + size());
+        return new MuaList(store, from + fromIdx, from + toIdx);
+    }
+
+    /*
+    Where this list starts within earlier, when it was made from earlier by narrowing it and
+    appending in place, so it shares earlier's array: its items up to earlier's end are
+    earlier's and the rest were added since. Otherwise -1.
+     */
+    public int offsetIn(MuaList earlier) {
+        return store == earlier.store && from >= earlier.from && from <= earlier.to ? from - earlier.from : -1;
+    }
+
+    public MuaList append(MuaValue item) {
+        Store target = claimTail(1);
+        target.items[target.used++] = item;
+        return new MuaList(target, target == store ? from : 0, target.used);
+    }
+
+    public MuaList concat(MuaList other) {
+        int count = other.size();
+        Store target = claimTail(count);
+        System.arraycopy(other.store.items, other.from, target.items, target.used, count);
+        target.used += count;
+        return new MuaList(target, target == store ? from : 0, target.used);
+    }
+
+    /*
+    Returns a store with room for count more items right after this list: the shared one when
+    nothing has been written past this list yet, otherwise a fresh copy of this list.
+     */
+    private Store claimTail(int count) {
+        if (to == store.used) {
+            if (store.used + count > store.items.length)
+                store.items = Arrays.copyOf(store.items, Math.max(store.used + count, store.items.length * 2 + 4));
+            return store;
+        }
+        MuaValue[] items = new MuaValue[Math.max(size() + count, size() * 2 + 4)];
+        System.arraycopy(store.items, from, items, 0, size());
+        return new Store(items, size());
+    }
+
+    /*
+    The items as a double[], or null if one of them is not a number. Lists never change,
+    so this is worked out once and kept for the numeric builtins.
+     */
+    public double[] toNumbers() {
+        if (!numbersKnown) {
+            numbers = parseNumbers();
+            numbersKnown = true;
+        }
+        return numbers;
+    }
+
+    private double[] parseNumbers() {
+        double[] res = new double[size()];
+        for (int i = 0; i < res.length; i++) {
+            MuaValue item = store.items[from + i];
+            if (!item.isNumeric()) return null;
+            res[i] = item.toNumber();
+        }
+        return res;
+    }
+
+    /*
+    The object of class kind cached on this list, such as the CodeBlock or Chunk it was compiled to,
+    or null. Each engine keys its own entry by class, so they do not replace each other's.
+     */
+    public <T> T getCached(Class<T> kind) {
+        if (cached != null)
+            for (Object value : cached) if (value.getClass() == kind) return kind.cast(value);
+        return null;
+    }
+
+    /*
+    Caches value on this list in place of an earlier one of the same class.
+     */
+    public void setCached(Object value) {
+        if (cached == null) {
+            cached = new Object[]{value};
+            return;
+        }
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i].getClass() == value.getClass()) {
+                cached[i] = value;
+                return;
+            }
+        }
+        cached = Arrays.copyOf(cached, cached.length + 1);
+        cached[cached.length - 1] = value;
+    }
+
+    @Override
+    public Iterator<MuaValue> iterator() {
+        return new Iterator<MuaValue>() {
+            private int idx = from;
+
+            @Override
+            public boolean hasNext() {
+                return idx < to;
+            }
+
+            @Override
+            public MuaValue next() {
+                if (idx >= to) throw new NoSuchElementException();
+                return store.items[idx++];
+            }
+        };
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("[");
-        for (MuaValue item : value) {
+        for (MuaValue item : this) {
             builder.append(item.toString());
             builder.append(" ");
         }
-        if (!value.isEmpty()) builder.deleteCharAt(builder.length()-1);
+        if (size() > 0) builder.deleteCharAt(builder.length()-1);
         builder.append("]");
         String res = builder.toString();
         if (res.length() > 0)
@@ -1,7 +1,9 @@
 package src.mua.core.types;
 
 public class MuaNull extends MuaValue {
-    public MuaNull() {
+    public static final MuaNull INSTANCE = new MuaNull();
+
+    private MuaNull() {
         super();
     }
 }
@@ -1,12 +1,34 @@
 package src.mua.core.types;
 
 public class MuaNum extends MuaValue {
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+    private static final MuaNum[] cache = new MuaNum[CACHE_HIGH - CACHE_LOW];
+
+    static {
+        for (int i = 0; i < cache.length; i++) cache[i] = new MuaNum(i + CACHE_LOW);
+    }
+
     public final double value;
     public MuaNum(double value) {
         super();
         this.value = value;
     }
 
+    /*
+    Shares one instance for each small integral value; -0.0 is not one of them, it prints differently.
+     */
+    public static MuaNum valueOf(double value) {
+        int i = (int) value;
+        if (i == value && i >= CACHE_LOW && i < CACHE_HIGH && (i != 0 || Double.doubleToRawLongBits(value) == 0))
+            return cache[i - CACHE_LOW];
+        return new MuaNum(value);
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return true;
+    }
+
     @Override
     public double toNumber() {
         return this.value;
@@ -5,6 +5,9 @@ public class MuaValue {
     public String toString() {
         return "";
     }
+    public boolean isNumeric() {
+        return false;
+    }
     public double toNumber() {
         throw new RuntimeException("TypeError: Number expected");
     }
@@ -1,7 +1,12 @@
 package src.mua.core.types;
 
 public class MuaWord extends MuaValue {
+    private static final byte UNKNOWN = 0, NUMERIC = 1, NOT_NUMERIC = 2;
+
     public final String value;
+    private byte numeric = UNKNOWN;
+    private double number;
+
     public MuaWord(String value) {
         super();
         this.value = value;
@@ -12,9 +17,38 @@ public class MuaWord extends MuaValue {
         return value;
     }
 
+    /*
+    Parsed the first time it is asked for and remembered, words are immutable.
+     */
+    @Override
+    public boolean isNumeric() {
+        if (numeric == UNKNOWN) {
+            numeric = NOT_NUMERIC;
+            if (mayBeNumber(value)) {
+                try {
+                    number = Double.parseDouble(value);
+                    numeric = NUMERIC;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return numeric == NUMERIC;
+    }
+
     @Override
     public double toNumber() {
-        return Double.valueOf(value);
+        if (isNumeric()) return number;
+        return Double.valueOf(value); // throws the same error as before
+    }
+
+    /*
+    Rules out most words without throwing: a number starts with a digit, a sign, a dot,
+    NaN or Infinity, possibly after whitespace.
+     */
+    private static boolean mayBeNumber(String value) {
+        if (value.isEmpty()) return false;
+        char c = value.charAt(0);
+        return c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'N' || c == 'I' || c <= ' ';
     }
 
 }
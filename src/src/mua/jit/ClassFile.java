@@ -0,0 +1,101 @@
+package src.mua.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/*
+Just enough of the class file format to emit one class with a few methods.
+Classes are written as version 49 so the code needs no StackMapTable.
+ */
+final class ClassFile {
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private final HashMap<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1, methodCount = 0;
+
+    private int entry(String key, int tag, int size, Object a, Object b) {
+        Integer idx = entries.get(key);
+        if (idx != null) return idx;
+        try {
+            pool.writeByte(tag);
+            if (tag == 1) pool.writeUTF((String) a);
+            else if (tag == 6) pool.writeDouble((Double) a);
+            else {
+                pool.writeShort((Integer) a);
+                if (b != null) pool.writeShort((Integer) b);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        idx = poolCount;
+        poolCount += size;
+        entries.put(key, idx);
+        return idx;
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, 1, value, null);
+    }
+
+    int classRef(String internalName) {
+        return entry("C" + internalName, 7, 1, utf8(internalName), null);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int nameAndType = entry("N" + name + descriptor, 12, 1, utf8(name), utf8(descriptor));
+        return entry("M" + owner + "." + name + descriptor, 10, 1, classRef(owner), nameAndType);
+    }
+
+    int doubleConst(double value) {
+        return entry("D" + Double.doubleToRawLongBits(value), 6, 2, value, null);
+    }
+
+    void addMethod(int access, String name, String descriptor, byte[] code, int maxStack, int maxLocals) {
+        try {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1);
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(12 + code.length);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(code.length);
+            methods.write(code);
+            methods.writeShort(0);
+            methods.writeShort(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        methodCount++;
+    }
+
+    byte[] toBytes(String name, String superName, String interfaceName) {
+        int thisClass = classRef(name), superClass = classRef(superName), iface = classRef(interfaceName);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+            out.writeShort(0);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
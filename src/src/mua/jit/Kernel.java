@@ -0,0 +1,8 @@
+package src.mua.jit;
+
+/*
+Implemented by the hidden classes generated for hot numeric functions.
+ */
+interface Kernel {
+    double apply(double[] args);
+}
@@ -0,0 +1,263 @@
+package src.mua.jit;
+
+import src.mua.core.SymbolTable;
+import src.mua.core.types.*;
+import src.mua.parse.Lexer;
+import src.mua.parse.Parser;
+import src.mua.parse.Statement;
+import src.mua.parse.ast.CallNode;
+import src.mua.parse.ast.ConstNode;
+import src.mua.parse.ast.MuaNode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Compiles a user function to a hidden class when its body is a numeric kernel: a single
+output of an arithmetic expression, or an if whose literal branches are kernels themselves.
+Parameters become doubles and calls to the function itself become direct static calls,
+or a jump back to the start when they are in tail position.
+ */
+class KernelCompiler {
+    private static final String CLASS_NAME = "src/mua/jit/MuaKernel";
+    private static final List<String> binaryOps = Arrays.asList("+", "-", "*", "/", "add", "sub", "mul", "div");
+    private static final int[] binaryOpcodes = {0x63, 0x67, 0x6b, 0x6f, 0x63, 0x67, 0x6b, 0x6f};
+
+    private final String name;
+    private final List<String> params;
+    private final SymbolTable symbolTable;
+    private final ClassFile classFile = new ClassFile();
+    private final String runDescriptor;
+    private byte[] code = new byte[256];
+    private int size = 0, depth = 0, maxDepth = 0;
+
+    private KernelCompiler(String name, List<String> params, SymbolTable symbolTable) {
+        this.name = name;
+        this.params = params;
+        this.symbolTable = symbolTable;
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < params.size(); i++) descriptor.append('D');
+        runDescriptor = descriptor.append(")D").toString();
+    }
+
+    /*
+    Returns null when the function is not a numeric kernel.
+     */
+    static Kernel compile(String name, List<String> params, MuaList body, SymbolTable symbolTable) {
+        if (params.size() > 100 || params.contains(name)) return null;
+        try {
+            return new KernelCompiler(name, params, symbolTable).compile(body);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /*
+    The gen methods below emit code for a node and return false, leaving code unusable, when it
+    is outside what kernels can do.
+     */
+    private Kernel compile(MuaList body) throws ParseException {
+        if (!genStatement(parseBlock(body))) return null;
+        classFile.addMethod(0x0009, "run", runDescriptor, Arrays.copyOf(code, size), maxDepth, params.size() * 2);
+        genConstructor();
+        genApply();
+        byte[] bytes = classFile.toBytes(CLASS_NAME, "java/lang/Object", "src/mua/jit/Kernel");
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Kernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to load compiled function " + name, e);
+        }
+    }
+
+    // the single statement of block, or null if it has none or more than one
+    private MuaNode parseBlock(MuaList block) throws ParseException {
+        String rawCode = block.toString();
+        Lexer tokenStream = new Lexer(rawCode.substring(1, rawCode.length() - 1), symbolTable);
+        if (tokenStream.isTokenFinished()) return null;
+        Statement statement = new Parser(tokenStream, symbolTable).parseStatement();
+        if (statement.isStop() || !tokenStream.isTokenFinished()) return null;
+        return statement.getNode();
+    }
+
+    private void genConstructor() {
+        size = 0;
+        op(0x2a, 0); // aload_0
+        op(0xb7, 0); // invokespecial
+        u2(classFile.methodRef("java/lang/Object", "<init>", "()V"));
+        op(0xb1, 0); // return
+        classFile.addMethod(0x0001, "<init>", "()V", Arrays.copyOf(code, size), 1, 1);
+    }
+
+    private void genApply() {
+        size = 0;
+        for (int i = 0; i < params.size(); i++) {
+            op(0x2b, 0); // aload_1
+            op(0x10, 0); // bipush
+            code[size++] = (byte) i;
+            op(0x31, 0); // daload
+        }
+        op(0xb8, 0); // invokestatic
+        u2(classFile.methodRef(CLASS_NAME, "run", runDescriptor));
+        op(0xaf, 0); // dreturn
+        classFile.addMethod(0x0001, "apply", "([D)D", Arrays.copyOf(code, size), params.size() * 2 + 2, 2);
+    }
+
+    private boolean genStatement(MuaNode node) throws ParseException {
+        CallNode call = call(node);
+        if (call == null) return false;
+        MuaNode[] args = call.getArgs();
+        if (call.getName().equals("output") && isSelfCall(args[0])) {
+            // a call to itself in tail position reassigns the parameters and starts over
+            MuaNode[] callArgs = ((CallNode) args[0]).getArgs();
+            for (MuaNode arg : callArgs) if (!genNumber(arg)) return false;
+            for (int i = callArgs.length - 1; i >= 0; i--) {
+                op(0x39, -2); // dstore
+                code[size++] = (byte) (i * 2);
+            }
+            int at = size;
+            op(0xa7, 0); // goto
+            u2(-at);
+            return true;
+        } else if (call.getName().equals("output")) {
+            if (!genNumber(args[0])) return false;
+            op(0xaf, -2); // dreturn
+            return true;
+        } else if (call.getName().equals("if")) {
+            if (!(args[1] instanceof ConstNode) || !(args[2] instanceof ConstNode)) return false;
+            MuaValue yes = ((ConstNode) args[1]).getValue(), no = ((ConstNode) args[2]).getValue();
+            if (!(yes instanceof MuaList) || !(no instanceof MuaList)) return false;
+            if (!genCondition(args[0])) return false;
+            int toElse = branch(0x99, -1); // ifeq
+            if (!genStatement(parseBlock((MuaList) yes))) return false;
+            patch(toElse);
+            return genStatement(parseBlock((MuaList) no));
+        } else return false;
+    }
+
+    private boolean genNumber(MuaNode node) {
+        if (node instanceof ConstNode) {
+            MuaValue value = ((ConstNode) node).getValue();
+            if (!(value instanceof MuaNum)) return false;
+            op(0x14, 2); // ldc2_w
+            u2(classFile.doubleConst(value.toNumber()));
+            return true;
+        }
+        CallNode call = (CallNode) node;
+        String func = call.getName();
+        MuaNode[] args = call.getArgs();
+        int binaryOp = binaryOps.indexOf(func);
+        if (!symbolTable.isCoreFunction(func)) {
+            if (!func.equals(name) || args.length != params.size()) return false;
+            for (MuaNode arg : args) if (!genNumber(arg)) return false;
+            op(0xb8, 2 - 2 * args.length); // invokestatic
+            u2(classFile.methodRef(CLASS_NAME, "run", runDescriptor));
+        } else if (func.equals("thing")) {
+            MuaValue varName = args[0] instanceof ConstNode ? ((ConstNode) args[0]).getValue() : null;
+            int idx = varName instanceof MuaWord ? params.indexOf(varName.toString()) : -1;
+            if (idx < 0) return false;
+            op(0x18, 2); // dload
+            code[size++] = (byte) (idx * 2);
+        } else if (binaryOp >= 0) {
+            if (!genNumber(args[0]) || !genNumber(args[1])) return false;
+            op(binaryOpcodes[binaryOp], -2);
+        } else if (func.equals("%") || func.equals("mod")) {
+            if (!genNumber(args[0])) return false;
+            invokeMath("round", "(D)J", 0);
+            if (!genNumber(args[1])) return false;
+            invokeMath("round", "(D)J", 0);
+            op(0x71, -2); // lrem
+            op(0x8a, 0);  // l2d
+        } else if (func.equals("negative")) {
+            if (!genNumber(args[0])) return false;
+            op(0x77, 0); // dneg
+        } else if (func.equals("int")) {
+            if (!genNumber(args[0])) return false;
+            invokeMath("floor", "(D)D", 0);
+        } else if (func.equals("sqrt")) {
+            if (!genNumber(args[0])) return false;
+            invokeMath("sqrt", "(D)D", 0);
+        } else return false;
+        return true;
+    }
+
+    /*
+    Leaves 1 or 0 on the operand stack.
+     */
+    private boolean genCondition(MuaNode node) {
+        if (node instanceof ConstNode) {
+            MuaValue value = ((ConstNode) node).getValue();
+            if (!(value instanceof MuaBool)) return false;
+            op(((MuaBool) value).toBoolean() ? 0x04 : 0x03, 1);
+            return true;
+        }
+        CallNode call = (CallNode) node;
+        String func = call.getName();
+        MuaNode[] args = call.getArgs();
+        if (!symbolTable.isCoreFunction(func)) return false;
+        if (func.equals("lt") || func.equals("gt") || func.equals("eq")) {
+            if (!genNumber(args[0]) || !genNumber(args[1])) return false;
+            // dcmpg for lt and dcmpl otherwise, so that NaN compares false
+            op(func.equals("lt") ? 0x98 : 0x97, -3);
+            int toTrue = branch(func.equals("lt") ? 0x9b : func.equals("gt") ? 0x9d : 0x99, -1);
+            op(0x03, 1); // iconst_0
+            int toEnd = branch(0xa7, 0); // goto
+            depth--;
+            patch(toTrue);
+            op(0x04, 1); // iconst_1
+            patch(toEnd);
+        } else if (func.equals("and") || func.equals("or")) {
+            if (!genCondition(args[0]) || !genCondition(args[1])) return false;
+            op(func.equals("and") ? 0x7e : 0x80, -1);
+        } else if (func.equals("not")) {
+            if (!genCondition(args[0])) return false;
+            op(0x04, 1);
+            op(0x82, -1); // ixor
+        } else return false;
+        return true;
+    }
+
+    private boolean isSelfCall(MuaNode node) {
+        return node instanceof CallNode && ((CallNode) node).getName().equals(name)
+                && !symbolTable.isCoreFunction(name) && ((CallNode) node).getArgs().length == params.size();
+    }
+
+    // node as a call to a builtin, or null; also null for the missing statement of parseBlock
+    private CallNode call(MuaNode node) {
+        if (!(node instanceof CallNode) || !symbolTable.isCoreFunction(((CallNode) node).getName())) return null;
+        return (CallNode) node;
+    }
+
+    private void invokeMath(String method, String descriptor, int stackDelta) {
+        op(0xb8, stackDelta);
+        u2(classFile.methodRef("java/lang/Math", method, descriptor));
+    }
+
+    private int branch(int opcode, int stackDelta) {
+        int at = size;
+        op(opcode, stackDelta);
+        u2(0);
+        return at;
+    }
+
+    private void patch(int at) {
+        int offset = size - at;
+        code[at + 1] = (byte) (offset >> 8);
+        code[at + 2] = (byte) offset;
+    }
+
+    private void op(int opcode, int stackDelta) {
+        if (size + 4 > code.length) code = Arrays.copyOf(code, code.length * 2);
+        code[size++] = (byte) opcode;
+        depth += stackDelta;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void u2(int value) {
+        code[size++] = (byte) (value >> 8);
+        code[size++] = (byte) value;
+    }
+}
@@ -0,0 +1,96 @@
+package src.mua.jit;
+
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaNum;
+import src.mua.core.types.MuaValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+Counts calls of user functions and, once a function has been called more than
+mua.jit.threshold times, tries to compile it with KernelCompiler. A negative threshold turns this off.
+ */
+public class MuaJit {
+    private static final int threshold = Integer.getInteger("mua.jit.threshold", 1000);
+
+    private static final class Profile {
+        final String name;
+        int calls = 0;
+        boolean rejected = false;
+        Kernel kernel;
+
+        Profile(String name) {
+            this.name = name;
+        }
+    }
+
+    private final HashMap<String, Profile> compiled = new HashMap<>();
+
+    /*
+    Runs the compiled form of the function def bound to name, or returns null
+    if the caller has to interpret it.
+     */
+    public MuaValue invoke(String name, MuaList def, MuaValue[] args, SymbolTable symbolTable) {
+        if (threshold < 0) return null;
+        Profile profile = def.getCached(Profile.class);
+        if (profile == null) {
+            profile = new Profile(name);
+            def.setCached(profile);
+        }
+        if (profile.kernel == null) {
+            if (profile.rejected || ++profile.calls <= threshold) return null;
+            if (!isBoundGlobally(name, profile, def, symbolTable)) return null;
+            List<String> params = new ArrayList<>();
+            for (MuaValue param : (MuaList) def.get(0)) params.add(param.toString());
+            profile.kernel = KernelCompiler.compile(name, params, (MuaList) def.get(1), symbolTable);
+            if (profile.kernel == null) {
+                profile.rejected = true;
+                return null;
+            }
+            compiled.put(name, profile);
+        }
+        // calls to itself inside the kernel are bound to this def
+        if (!isBoundGlobally(name, profile, def, symbolTable)) return null;
+        double[] values = new double[args.length];
+        for (int i = 0; i < values.length; i++) {
+            MuaValue arg = args[i];
+            if (!(arg instanceof MuaNum)) return null;
+            values[i] = ((MuaNum) arg).value;
+        }
+        try {
+            return MuaNum.valueOf(profile.kernel.apply(values));
+        } catch (StackOverflowError e) {
+            // kernels recurse on the Java stack; they have no side effects, so the caller can just interpret
+            profile.kernel = null;
+            profile.rejected = true;
+            compiled.remove(name);
+            return null;
+        }
+    }
+
+    private boolean isBoundGlobally(String name, Profile profile, MuaList def, SymbolTable symbolTable) {
+        return name.equals(profile.name) && symbolTable.getGlobalVariable(name) == def;
+    }
+
+    /*
+    Drops compiled code for name, called whenever the name is rebound.
+     */
+    public void invalidate(String name) {
+        Profile profile = compiled.remove(name);
+        if (profile != null) {
+            profile.kernel = null;
+            profile.calls = 0;
+        }
+    }
+
+    public void invalidateAll() {
+        for (Profile profile : compiled.values()) {
+            profile.kernel = null;
+            profile.calls = 0;
+        }
+        compiled.clear();
+    }
+}
@@ -0,0 +1,68 @@
+package src.mua.parse;
+
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.TailCall;
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaNull;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+
+/*
+A list run as code. The list is lexed once, and each statement is parsed the first time
+it is reached and kept until the functions it was parsed against change.
+ */
+public class CodeBlock {
+    private final Lexer tokenStream;
+    private final Statement[] statements;
+
+    private CodeBlock(String sourceCode, SymbolTable symbolTable) throws ParseException {
+        tokenStream = Lexer.ofBlock(sourceCode, symbolTable);
+        statements = new Statement[tokenStream.tokenCount()];
+    }
+
+    public static CodeBlock of(MuaList code, SymbolTable symbolTable) throws ParseException {
+        CodeBlock block = code.getCached(CodeBlock.class);
+        if (block != null) return block;
+        String rawCode = code.toString();
+        block = new CodeBlock(rawCode.substring(1, rawCode.length() - 1), symbolTable);
+        code.setCached(block);
+        return block;
+    }
+
+    public MuaValue run(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return run(symbolTable, input, false);
+    }
+
+    /*
+    With tail set the block is in tail position of a function body, and so is its last statement.
+     */
+    public MuaValue run(SymbolTable symbolTable, MuaInput input, boolean tail) throws ParseException {
+        MuaValue res = MuaNull.INSTANCE;
+        int pos = 0;
+        while (pos < statements.length) {
+            Statement statement = statementAt(pos, symbolTable);
+            if (statement.isStop()) {
+                symbolTable.exit(null);
+                break;
+            }
+            if (tail && statement.end == statements.length) res = statement.evalTail(symbolTable, input);
+            else res = statement.eval(symbolTable, input);
+            if (symbolTable.isExiting()) break;
+            pos = statement.end;
+        }
+        if (res instanceof TailCall) return res;
+        if (symbolTable.hasReturnValue()) return symbolTable.getReturnValue();
+        return res;
+    }
+
+    private Statement statementAt(int pos, SymbolTable symbolTable) throws ParseException {
+        Statement statement = statements[pos];
+        if (statement != null && statement.isValid(symbolTable)) return statement;
+        tokenStream.seek(pos);
+        statement = new Parser(tokenStream, symbolTable).parseStatement();
+        statements[pos] = statement;
+        return statement;
+    }
+}
@@ -1,65 +1,103 @@
 package src.mua.parse;
 
+import src.mua.core.CallSite;
 import src.mua.core.SymbolTable;
+import src.mua.core.Symbols;
 
 import java.text.ParseException;
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/*
+Splits source into tokens, kept as parallel arrays of type codes, symbol ids of their text or
+for literals the text itself, and for identifiers the CallSite that the parser and the
+completeness check share.
+ */
 public class Lexer {
-    private String sourceCode;
+    private char[] chars;
+    private int length;
     private SymbolTable symbolTable;
+    private final Symbols symbols;
     private int idx = 0, tokenIdx = 0, argCount = 0, bracketDepth = 0, parenthesisDepth = 0;
-    private ArrayList<Token> tokens = new ArrayList<>();
+    private byte[] types = new byte[16];
+    private int[] texts = new int[16]; // -1 for literals
+    private String[] literals = new String[16];
+    private CallSite[] sites = new CallSite[16];
+    private int tokenCount = 0;
+    private TokenCache.Writer recording; // gets every token lexed, to cache them
 
     public Lexer(String sourceCode, SymbolTable symbolTable) throws ParseException {
-        this.sourceCode = sourceCode;
+        this.chars = sourceCode.toCharArray();
+        this.length = chars.length;
         this.symbolTable = symbolTable;
+        this.symbols = symbolTable.getSymbols();
         splitTokens();
         //printTokens();
     }
 
+    /*
+    Lexes the source of a block that is cached and never appended to. Once lexed the lexer lets go
+    of symbolTable, which may be the frame of the call that first ran the block.
+     */
+    public static Lexer ofBlock(String sourceCode, SymbolTable symbolTable) throws ParseException {
+        Lexer lexer = new Lexer(sourceCode, symbolTable);
+        lexer.symbolTable = null;
+        return lexer;
+    }
+
+    /*
+    Lexes more source. Everything appended before has been split into tokens already,
+    so only the new text is kept.
+     */
     public void append(String sourceCode) throws ParseException {
-        this.sourceCode += sourceCode;
+        this.chars = sourceCode.toCharArray();
+        this.length = chars.length;
+        idx = 0;
         splitTokens();
         //printTokens();
     }
 
-    private static final String upperCaseLetter = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final String lowerCaseLetter = "abcdefghijklmnopqrstuvwxyz";
-    private static final String decDigits = "0123456789";
-    private static final String digitSign = "+-";
-    private static final String blanks = " \u000C\n\t\r ";
-    private static final String firstIdChars = upperCaseLetter + lowerCaseLetter;
-    private static final String idChars = firstIdChars + decDigits + "_";
-    private static final String MUA_KWDChars = ":";
-    private static final String brackets = "[]";
-    private static final String opChars = "+-*/%()";
-    private static final String eof = "\u0000";
-    private static final String delimiters = opChars + brackets + MUA_KWDChars + blanks + eof;
+    // character classes, looked up in charClass for ASCII; other characters belong to none
+    private static final int BLANK = 1, ID_FIRST = 2, ID = 4, DIGIT = 8, SIGN = 16, OP = 32,
+            BRACKET = 64, KWD = 128, EOF = 256, DELIMITER = 512;
+    private static final short[] charClass = new short[128];
+
+    static {
+        for (char ch = 'A'; ch <= 'Z'; ch++) charClass[ch] |= ID_FIRST | ID;
+        for (char ch = 'a'; ch <= 'z'; ch++) charClass[ch] |= ID_FIRST | ID;
+        for (char ch = '0'; ch <= '9'; ch++) charClass[ch] |= DIGIT | ID;
+        charClass['_'] |= ID;
+        for (char ch : " \u000C\n\t\r".toCharArray()) charClass[ch] |= BLANK | DELIMITER;
+        for (char ch : "+-".toCharArray()) charClass[ch] |= SIGN;
+        for (char ch : "+-*/%()".toCharArray()) charClass[ch] |= OP | DELIMITER;
+        for (char ch : "[]".toCharArray()) charClass[ch] |= BRACKET | DELIMITER;
+        charClass[':'] |= KWD | DELIMITER;
+        charClass[0] |= EOF | DELIMITER;
+    }
+
+    private static boolean is(char ch, int classes) {
+        return ch < 128 && (charClass[ch] & classes) != 0;
+    }
 
     public static final boolean isValidId(String idName) {
-        char[] name = idName.toCharArray();
-        if (firstIdChars.indexOf(name[0]) == -1) return false;
-        for (char ch : name) if (idChars.indexOf(ch) == -1) return false;
+        if (!is(idName.charAt(0), ID_FIRST)) return false;
+        for (int i = 0; i < idName.length(); i++) if (!is(idName.charAt(i), ID)) return false;
         return true;
     }
 
     private char currentChar() {
-        if (sourceCode.length() > idx) return sourceCode.charAt(idx);
-        else return '\u0000';
+        return idx < length ? chars[idx] : '\u0000';
     }
 
     private char peekOneChar() {
-        if (sourceCode.length() > idx + 1) return sourceCode.charAt(idx + 1);
-        else return '\u0000';
+        return idx + 1 < length ? chars[idx + 1] : '\u0000';
     }
 
     private boolean isLexFinished() {
-        return idx >= sourceCode.length();
+        return idx >= length;
     }
 
     public boolean isTokenFinished() {
-        return tokenIdx >= tokens.size();
+        return tokenIdx >= tokenCount;
     }
 
     public boolean isComplete() {
@@ -71,137 +109,221 @@ public class Lexer {
     }
 
     private void splitTokens() throws ParseException {
-        while (this.currentChar() != '\u0000' && !isLexFinished()) {
-            char ch = currentChar();
-            if (brackets.indexOf(ch) != -1) lexBrackets();
-            else if (blanks.indexOf(ch) != -1) ignoreBlanks();
+        while (!isLexFinished() && chars[idx] != '\u0000') {
+            char ch = chars[idx];
+            int cls = ch < 128 ? charClass[ch] : 0;
+            if ((cls & BRACKET) != 0) lexBrackets();
+            else if ((cls & BLANK) != 0) ignoreBlanks();
             else if (ch == '/' && peekOneChar() == '/') ignoreComment();
             else if (bracketDepth > 0) lexWord();
             else if (ch == '\"') {
                 nextChar();
                 lexWord();
-            } else if (MUA_KWDChars.indexOf(ch) != -1) lexMuaKwd();
-            else if (opChars.indexOf(ch) != -1 &&(parenthesisDepth > 0 || ch=='(')) lexOp();
-            else if (decDigits.indexOf(ch) != -1 || (parenthesisDepth == 0 && digitSign.indexOf(ch) != -1)) lexNumber();
-            else if (firstIdChars.indexOf(ch) != -1) lexIdentifierOrConstant();
+            } else if ((cls & KWD) != 0) lexMuaKwd();
+            else if ((cls & OP) != 0 && (parenthesisDepth > 0 || ch == '(')) lexOp();
+            else if ((cls & DIGIT) != 0 || (parenthesisDepth == 0 && (cls & SIGN) != 0)) lexNumber();
+            else if ((cls & ID_FIRST) != 0) lexIdentifierOrConstant();
             else throw new ParseException("Unexpected character" + ch, idx);
         }
     }
 
+    private void addToken(byte type, int start, int end) {
+        if (Token.isLiteral(type)) addToken(type, -1, new String(chars, start, end - start));
+        else addToken(type, symbols.intern(chars, start, end), null);
+    }
+
+    private void addToken(byte type, int text, String literal) {
+        if (tokenCount == types.length) {
+            types = Arrays.copyOf(types, tokenCount * 2);
+            texts = Arrays.copyOf(texts, tokenCount * 2);
+            literals = Arrays.copyOf(literals, tokenCount * 2);
+            sites = Arrays.copyOf(sites, tokenCount * 2);
+        }
+        types[tokenCount] = type;
+        texts[tokenCount] = text;
+        literals[tokenCount] = literal;
+        sites[tokenCount] = null;
+        tokenCount++;
+        if (recording != null) recording.token(type, literal != null ? literal : symbols.name(text));
+    }
+
+    void record(TokenCache.Writer recording) {
+        this.recording = recording;
+    }
+
+    /*
+    Adds a token lexed on an earlier run, keeping the counts behind isComplete as lexing it would.
+    text is the symbol id of the token's text, or -1 with literal holding it.
+     */
+    void replayToken(byte type, int text, String literal) {
+        if (type == Token.BRACKETS) {
+            if (text == Symbols.OPEN_BRACKET) bracketDepth++;
+            else bracketDepth--;
+        } else if (type == Token.OPERATOR) {
+            if (text == Symbols.OPEN_PAREN) parenthesisDepth++;
+            else if (text == Symbols.CLOSE_PAREN) parenthesisDepth--;
+        } else if (type != Token.MUA_KWD && argCount > 0) argCount--;
+        addToken(type, text, literal);
+        if (type == Token.IDENTIFIER) {
+            CallSite site = sites[tokenCount - 1] = new CallSite(text, symbolTable);
+            int count = site.argCount(symbolTable);
+            if (count >= 0) this.argCount += count;
+        }
+    }
+
     private void lexNumber() throws ParseException {
         if (this.argCount > 0) this.argCount--;
-        StringBuilder builder = new StringBuilder();
+        int start = idx;
         boolean isFloat;
         isFloat = false;
-        if (digitSign.indexOf(this.currentChar())!=-1) {
-            builder.append(this.currentChar());
-            this.nextChar();
-        }
-        while (decDigits.indexOf(this.currentChar()) != -1 || (this.currentChar() == '.')) {
+        if (is(currentChar(), SIGN)) this.nextChar();
+        while (is(currentChar(), DIGIT) || (this.currentChar() == '.')) {
             if (this.currentChar() == '.') {
                 isFloat = true;
             }
-            builder.append(this.currentChar());
             this.nextChar();
         }
-        if (delimiters.indexOf(currentChar()) != -1)
-            tokens.add(new Token(isFloat ? Token.TokenType.FLOAT : Token.TokenType.INTEGER,
-                    builder.toString()));
-        else throw new ParseException("Invalid number literal " + builder.toString() + currentChar(), idx);
+        if (is(currentChar(), DELIMITER))
+            addToken(isFloat ? Token.FLOAT : Token.INTEGER, start, idx);
+        else throw new ParseException("Invalid number literal " + new String(chars, start, idx - start) + currentChar(), idx);
     }
 
     private void ignoreBlanks() {
-        while (!isLexFinished() && blanks.indexOf(currentChar()) != -1) nextChar();
+        while (!isLexFinished() && is(chars[idx], BLANK)) nextChar();
     }
 
     private void ignoreComment() {
-        while (!isLexFinished() && currentChar() != '\n' && currentChar() != '\u0000') nextChar();
+        while (!isLexFinished() && chars[idx] != '\n' && chars[idx] != '\u0000') nextChar();
     }
 
     private void lexWord() {
         if (this.argCount > 0) this.argCount--;
-        StringBuilder builder = new StringBuilder();
-        builder.append(this.currentChar());
-        this.nextChar();
-        while (blanks.indexOf(currentChar()) == -1 && eof.indexOf(currentChar()) == -1 && brackets.indexOf(currentChar()) == -1) {
-            builder.append(currentChar());
-            nextChar();
+        if (isLexFinished()) {
+            // a quote at the very end of the source is the word "\u0000"
+            addToken(Token.WORD_LITERAL, -1, "\u0000");
+            this.nextChar();
+            return;
         }
-        tokens.add(new Token(Token.TokenType.WORD_LITERAL, builder.toString()));
+        int start = idx;
+        this.nextChar();
+        while (!is(currentChar(), BLANK | EOF | BRACKET)) nextChar();
+        addToken(Token.WORD_LITERAL, start, idx);
     }
 
     private void lexNameWord() {
         if (this.argCount > 0) this.argCount--;
-        StringBuilder builder = new StringBuilder();
-        builder.append(this.currentChar());
-        this.nextChar();
-        while (idChars.indexOf(currentChar()) != -1) {
-            builder.append(currentChar());
-            nextChar();
+        if (isLexFinished()) {
+            addToken(Token.WORD_LITERAL, -1, "\u0000");
+            this.nextChar();
+            return;
         }
-        tokens.add(new Token(Token.TokenType.WORD_LITERAL, builder.toString()));
+        int start = idx;
+        this.nextChar();
+        while (is(currentChar(), ID)) nextChar();
+        addToken(Token.WORD_LITERAL, start, idx);
     }
 
     private void lexBrackets() throws ParseException {
-        Token currentToken = new Token(Token.TokenType.BRACKETS, String.valueOf(currentChar()));
-        tokens.add(currentToken);
+        char ch = currentChar();
+        addToken(Token.BRACKETS, ch == '[' ? Symbols.OPEN_BRACKET : Symbols.CLOSE_BRACKET, null);
         nextChar();
-        if (currentToken.value.equals("[")) bracketDepth++;
-        else if (currentToken.value.equals("]")) {
+        if (ch == '[') bracketDepth++;
+        else {
             if (bracketDepth <= 0) throw new ParseException("Unexpected bracket ]", idx);
             bracketDepth--;
         }
     }
 
     private void lexMuaKwd() throws ParseException {
-        Token currentToken = new Token(Token.TokenType.MUA_KWD, String.valueOf(currentChar()));
-        tokens.add(currentToken);
+        addToken(Token.MUA_KWD, Symbols.COLON, null);
         nextChar();
-        if (currentToken.value.equals(":")) lexNameWord();
+        lexNameWord();
     }
 
     private void lexOp() {
-        Token thisToken = new Token(Token.TokenType.OPERATOR, String.valueOf(currentChar()));
-        tokens.add(thisToken);
-        if (thisToken.value.equals("(")) this.parenthesisDepth++;
-        else if (thisToken.value.equals(")")) this.parenthesisDepth--;
+        char ch = currentChar();
+        addToken(Token.OPERATOR, idx, idx + 1);
+        if (ch == '(') this.parenthesisDepth++;
+        else if (ch == ')') this.parenthesisDepth--;
         nextChar();
     }
 
     private void lexIdentifierOrConstant() throws ParseException {
         if (this.argCount > 0) this.argCount--;
-        StringBuilder builder = new StringBuilder();
-        while (idChars.indexOf(currentChar()) != -1) {
-            builder.append(currentChar());
-            nextChar();
-        }
-        if (delimiters.indexOf(currentChar()) != -1) {
-            String id = builder.toString();
-            if (id.equals("true") || id.equals("false"))
-                tokens.add(new Token(Token.TokenType.BOOLEAN, id));
+        int start = idx;
+        while (is(currentChar(), ID)) nextChar();
+        if (is(currentChar(), DELIMITER)) {
+            int text = symbols.intern(chars, start, idx);
+            if (text == Symbols.TRUE || text == Symbols.FALSE)
+                addToken(Token.BOOLEAN, text, null);
             else {
-                tokens.add(new Token(Token.TokenType.IDENTIFIER, id));
-                if (symbolTable.isFunction(id)) this.argCount += symbolTable.getFunctionArgCount(id);
+                addToken(Token.IDENTIFIER, text, null);
+                CallSite site = sites[tokenCount - 1] = new CallSite(text, symbolTable);
+                int count = site.argCount(symbolTable);
+                if (count >= 0) this.argCount += count;
             }
-        } else throw new ParseException("Invalid identifier" + builder.toString() + currentChar(), idx);
+        } else throw new ParseException("Invalid identifier" + new String(chars, start, idx - start) + currentChar(), idx);
     }
 
     public void printTokens() {
-        tokens.forEach((token) -> System.out.printf("<%s> %s ", token.type, token.value));
+        for (int i = 0; i < tokenCount; i++)
+            System.out.printf("<%s> %s ", Token.typeName(types[i]), literals[i] != null ? literals[i] : symbols.name(texts[i]));
         System.out.println();
     }
 
-    public Token currentToken() {
-        return tokens.get(tokenIdx);
+    public byte currentType() {
+        return types[tokenIdx];
+    }
+
+    /*
+    Symbol id of the current token's text, or -1 for a literal.
+     */
+    public int currentSymbol() {
+        return texts[tokenIdx];
+    }
+
+    public String currentText() {
+        String literal = literals[tokenIdx];
+        return literal != null ? literal : symbols.name(texts[tokenIdx]);
+    }
+
+    /*
+    The call site of the current token if it is an identifier.
+     */
+    public CallSite currentSite() {
+        return sites[tokenIdx];
     }
 
     public void nextToken() {
         ++tokenIdx;
     }
 
-    private void reset() {
-        tokenIdx = 0;
+    public int position() {
+        return tokenIdx;
     }
 
+    public void seek(int tokenIdx) {
+        this.tokenIdx = tokenIdx;
+    }
 
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /*
+    Forgets the tokens before the current one, so a long REPL session only keeps what it has not run.
+    Token positions taken before this are no longer valid. Compacts once at least half the tokens are used up.
+     */
+    public void discardConsumed() {
+        if (tokenIdx == 0 || tokenIdx * 2 < tokenCount) return;
+        int rest = tokenCount - tokenIdx;
+        System.arraycopy(types, tokenIdx, types, 0, rest);
+        System.arraycopy(texts, tokenIdx, texts, 0, rest);
+        System.arraycopy(literals, tokenIdx, literals, 0, rest);
+        System.arraycopy(sites, tokenIdx, sites, 0, rest);
+        Arrays.fill(literals, rest, tokenCount, null);
+        Arrays.fill(sites, rest, tokenCount, null);
+        tokenCount = rest;
+        tokenIdx = 0;
+    }
 }
@@ -0,0 +1,99 @@
+package src.mua.parse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+Reads a source file line by line through a memory map. The file is mapped a window at a time
+and decoded a chunk at a time, so memory stays bounded however large the file is.
+Lines end at \n, \r or \r\n, as with BufferedReader.
+ */
+final class MappedSource implements Closeable {
+    private static final long WINDOW = 64L << 20;
+    private static final int CHUNK = 1 << 16;
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(CHUNK);
+    private final StringBuilder line = new StringBuilder();
+    private MappedByteBuffer window;
+    private long offset = 0; // of the window in the file
+    private boolean decoded = false, skipLineFeed = false;
+
+    MappedSource(String filePath) throws IOException {
+        channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        size = channel.size();
+        chars.flip();
+    }
+
+    /*
+    Returns the next line without its terminator, or null at the end of the file.
+     */
+    String readLine() throws IOException {
+        while (true) {
+            while (chars.hasRemaining()) {
+                char ch = chars.get();
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (ch == '\n') continue;
+                }
+                if (ch == '\n' || ch == '\r') {
+                    skipLineFeed = ch == '\r';
+                    return takeLine();
+                }
+                line.append(ch);
+            }
+            if (!decode()) return line.length() > 0 ? takeLine() : null;
+        }
+    }
+
+    private String takeLine() {
+        String res = line.toString();
+        line.setLength(0);
+        return res;
+    }
+
+    /*
+    Decodes the next chunk into chars, mapping the next window when this one is used up.
+    Returns false at the end of the file.
+     */
+    private boolean decode() throws IOException {
+        chars.clear();
+        while (!decoded && chars.position() == 0) {
+            if (window == null || !window.hasRemaining()) {
+                if (window != null) offset += window.limit();
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+            }
+            boolean last = offset + window.limit() == size;
+            CoderResult result = decoder.decode(window, chars, last);
+            if (result.isError()) result.throwException();
+            if (result.isUnderflow() && window.hasRemaining() && !last) {
+                // a character is split across windows, map again from its first byte
+                offset += window.position();
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+            } else if (last && !window.hasRemaining() && result.isUnderflow()) {
+                decoder.flush(chars);
+                decoded = true;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,160 @@
+package src.mua.parse;
+
+import src.mua.core.CallSite;
+import src.mua.core.SymbolTable;
+import src.mua.core.Symbols;
+import src.mua.core.types.*;
+import src.mua.parse.ast.ArithNode;
+import src.mua.parse.ast.CallNode;
+import src.mua.parse.ast.ConstNode;
+import src.mua.parse.ast.IfNode;
+import src.mua.parse.ast.MakeNode;
+import src.mua.parse.ast.MuaNode;
+import src.mua.parse.ast.OutputNode;
+import src.mua.parse.ast.ThingNode;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+
+/*
+Turns the tokens of a Lexer into AST nodes, one statement at a time.
+ */
+public class Parser {
+    private final Lexer tokenStream;
+    private final SymbolTable symbolTable;
+    private final ArrayList<CallSite> sites = new ArrayList<>();
+    private final ArrayList<Integer> argCounts = new ArrayList<>();
+
+    public Parser(Lexer tokenStream, SymbolTable symbolTable) {
+        this.tokenStream = tokenStream;
+        this.symbolTable = symbolTable;
+    }
+
+    public Statement parseStatement() throws ParseException {
+        int start = tokenStream.position();
+        sites.clear();
+        argCounts.clear();
+        MuaNode node = null;
+        if (tokenStream.currentSymbol() == Symbols.STOP) tokenStream.nextToken();
+        else node = parseNode();
+        int[] counts = new int[argCounts.size()];
+        for (int i = 0; i < counts.length; i++) counts[i] = argCounts.get(i);
+        return new Statement(node, start, tokenStream.position(), sites.toArray(new CallSite[0]), counts);
+    }
+
+    private MuaNode parseFunc(CallSite site, int argCount) throws ParseException {
+        MuaNode[] args = new MuaNode[argCount];
+        for (int i = 0; i < argCount; i++) args[i] = parseNode();
+        return newCall(site, args);
+    }
+
+    private MuaNode parseFunc(String name, int argCount) throws ParseException {
+        return parseFunc(new CallSite(name, symbolTable), argCount);
+    }
+
+    private MuaNode newCall(String name, MuaNode[] args) {
+        return newCall(new CallSite(name, symbolTable), args);
+    }
+
+    private MuaNode newCall(CallSite site, MuaNode[] args) {
+        String name = site.getName();
+        if (ArithNode.isArith(name, args.length) && symbolTable.isCoreFunction(name))
+            return new ArithNode(name, args, symbolTable.getFunction(name));
+        String varName = literalWord(args.length > 0 ? args[0] : null);
+        if (name.equals("thing") && varName != null)
+            return new ThingNode(args, varName);
+        if (name.equals("make") && varName != null && !varName.isEmpty() && Lexer.isValidId(varName) && !symbolTable.isReserved(varName))
+            return new MakeNode(args, varName);
+        if (name.equals("output") && args.length == 1 && symbolTable.isReserved(name))
+            return new OutputNode(site, args);
+        if (name.equals("if") && args.length == 3 && symbolTable.isReserved(name))
+            return new IfNode(site, args);
+        return new CallNode(site, args);
+    }
+
+    private static String literalWord(MuaNode node) {
+        if (!(node instanceof ConstNode) || !(((ConstNode) node).getValue() instanceof MuaWord)) return null;
+        return ((ConstNode) node).getValue().toString();
+    }
+
+    private MuaList parseList() {
+        ArrayList<MuaValue> list = new ArrayList<>();
+        while (tokenStream.currentSymbol() != Symbols.CLOSE_BRACKET || tokenStream.currentType() != Token.BRACKETS) {
+            if (tokenStream.currentSymbol() == Symbols.OPEN_BRACKET && tokenStream.currentType() == Token.BRACKETS) {
+                tokenStream.nextToken();
+                list.add(parseList());
+            } else {
+                list.add(new MuaWord(tokenStream.currentText()));
+                tokenStream.nextToken();
+            }
+        }
+        tokenStream.nextToken();
+        return new MuaList(list);
+    }
+
+    /*
+    Parses the rest of a parenthesised expression by precedence climbing: * / % bind tighter
+    than + -, and operators of the same precedence group to the left.
+     */
+    private MuaNode parseExpr() throws ParseException {
+        MuaNode res = parseBinary(1);
+        tokenStream.nextToken(); // )
+        return res;
+    }
+
+    private MuaNode parseBinary(int minPrecedence) throws ParseException {
+        MuaNode left = parseNode();
+        while (true) {
+            if (tokenStream.currentType() != Token.OPERATOR)
+                throw new RuntimeException("Invalid expression!");
+            int op = tokenStream.currentSymbol();
+            int precedence = precedence(op);
+            if (precedence < 0) throw new RuntimeException("Unexpected operator \"" + tokenStream.currentText() + "\"");
+            if (precedence < minPrecedence) return left;
+            String name = tokenStream.currentText();
+            tokenStream.nextToken();
+            left = newCall(name, new MuaNode[]{left, parseBinary(precedence + 1)});
+        }
+    }
+
+    /*
+    0 for the closing parenthesis, which ends every level, and -1 for what is not a binary operator.
+     */
+    private static int precedence(int op) {
+        if (op == Symbols.CLOSE_PAREN) return 0;
+        if (op == Symbols.PLUS || op == Symbols.MINUS) return 1;
+        if (op == Symbols.TIMES || op == Symbols.DIVIDE || op == Symbols.MODULO) return 2;
+        return -1;
+    }
+
+    private MuaNode parseNode() throws ParseException {
+        byte type = tokenStream.currentType();
+        int symbol = tokenStream.currentSymbol();
+        String text = tokenStream.currentText();
+        CallSite site = tokenStream.currentSite();
+        tokenStream.nextToken();
+        if (type == Token.IDENTIFIER) {
+            int argCount = site.argCount(symbolTable);
+            sites.add(site);
+            argCounts.add(argCount);
+            if (argCount >= 0) return parseFunc(site, argCount);
+            else return new ConstNode(new MuaWord(text));
+        } else if (type == Token.INTEGER) return new ConstNode(MuaNum.valueOf(Double.valueOf(text)));
+        else if (type == Token.FLOAT) return new ConstNode(MuaNum.valueOf(Double.valueOf(text)));
+        else if (type == Token.BOOLEAN) return new ConstNode(MuaBool.valueOf(symbol == Symbols.TRUE));
+        else if (type == Token.WORD_LITERAL) return new ConstNode(new MuaWord(text));
+        else if (type == Token.BRACKETS) {
+            if (symbol == Symbols.OPEN_BRACKET) return new ConstNode(parseList());
+            else throw new RuntimeException("Unexpected bracket \"" + text + "\"");
+        } else if (type == Token.OPERATOR) {
+            if (symbol == Symbols.OPEN_PAREN) return parseExpr();
+            else if (symbol == Symbols.MINUS) return parseFunc("negative", 1);
+            else throw new RuntimeException("Unexpected operator \"" + text + "\"");
+        } else if (type == Token.MUA_KWD) {
+            if (symbol == Symbols.COLON) return parseFunc("thing", 1);
+            else throw new RuntimeException("Unknown MuaKwd \"" + text + "\"");
+        } else if (type == Token.EOF) {
+            return new ConstNode(MuaNull.INSTANCE);
+        } else throw new RuntimeException("Unknown expected token <" + Token.typeName(type) + ">" + text);
+    }
+}
@@ -0,0 +1,51 @@
+package src.mua.parse;
+
+import src.mua.core.CallSite;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaValue;
+import src.mua.parse.ast.MuaNode;
+
+import java.text.ParseException;
+
+/*
+One top-level expression of a block, covering tokens [start, end).
+Identifiers are parsed as calls or words depending on the functions visible at parse time,
+so the statement keeps what it resolved and can tell when it has to be parsed again.
+ */
+public class Statement {
+    public final int start, end;
+    private final MuaNode node;
+    private final CallSite[] sites;
+    private final int[] argCounts;
+
+    Statement(MuaNode node, int start, int end, CallSite[] sites, int[] argCounts) {
+        this.node = node;
+        this.start = start;
+        this.end = end;
+        this.sites = sites;
+        this.argCounts = argCounts;
+    }
+
+    public MuaNode getNode() {
+        return node;
+    }
+
+    public boolean isStop() {
+        return node == null;
+    }
+
+    public boolean isValid(SymbolTable symbolTable) {
+        for (int i = 0; i < sites.length; i++)
+            if (sites[i].argCount(symbolTable) != argCounts[i]) return false;
+        return true;
+    }
+
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return node.eval(symbolTable, input);
+    }
+
+    public MuaValue evalTail(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return node.evalTail(symbolTable, input);
+    }
+}
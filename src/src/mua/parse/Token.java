@@ -1,26 +1,33 @@
 package src.mua.parse;
 
-public class Token {
-    TokenType type;
-    String value;
+/*
+Token type codes. A Lexer keeps its tokens as parallel arrays of these codes and of their text:
+a symbol id (see Symbols) for names, operators and brackets, and a plain string for literals,
+which are dropped with their token instead of being interned for the rest of the session.
+ */
+public final class Token {
+    public static final byte INTEGER = 0;       //number: int
+    public static final byte FLOAT = 1;         //number: float
+    public static final byte WORD_LITERAL = 2;  //word literal value
+    public static final byte BOOLEAN = 3;       //boolean value: true or false
+    public static final byte OPERATOR = 4;
+    public static final byte IDENTIFIER = 5;
+    public static final byte MUA_KWD = 6;
+    public static final byte BRACKETS = 7;
+    public static final byte EOF = 8;
 
-    public Token(TokenType type,
-                 String value){
-        this.type = type;
-        this.value = value;
-        //System.out.println("<"+type.name()+">"+ value);
+    private static final String[] names = {"INTEGER", "FLOAT", "WORD_LITERAL", "BOOLEAN", "OPERATOR",
+            "IDENTIFIER", "MUA_KWD", "BRACKETS", "EOF"};
+
+    private Token() {
     }
 
-    public enum TokenType {
-        INTEGER,   //number: int
-        FLOAT,  //number: float
-        WORD_LITERAL,//word literal value
-        BOOLEAN,      //boolean value: true or false
-        OPERATOR,
-        IDENTIFIER,
-        MUA_KWD,
-        BRACKETS,
-        EOF
+    public static String typeName(byte type) {
+        return names[type];
     }
-}
 
+    // whether the text of tokens of type is kept as a string rather than a symbol id
+    static boolean isLiteral(byte type) {
+        return type == INTEGER || type == FLOAT || type == WORD_LITERAL;
+    }
+}
@@ -0,0 +1,238 @@
+package src.mua.parse;
+
+import src.mua.core.Symbols;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/*
+Keeps the tokens of files run by load in a directory, enabled with -Dmua.cache=DIR, so a file
+seen before is neither decoded nor lexed again. Entries are named by the file's length, CRC-32
+and Adler-32, which the JDK computes natively over the mapped file, and by the format version,
+so an edited file misses and a new interpreter does not read an old format.
+Statements still parse as they run, since how they parse depends on the functions defined by
+then. Every line that has tokens is followed by a LINE mark, so a replay evaluates at the same
+points as reading the source does.
+
+An entry is "MUAT" format:int and then tokens, each a type byte and the index of its text in the
+entry. The first use of an index is followed by the text as a length and UTF-8 bytes. Indices
+and lengths are varints, seven bits to a byte, low bits first. A replay interns only the texts
+of names, as the lexer does.
+ */
+final class TokenCache {
+    private static final String directory = System.getProperty("mua.cache");
+    private static final byte[] MAGIC = {'M', 'U', 'A', 'T'};
+    private static final int FORMAT = 2;
+    private static final byte LINE = -1;
+    private static final long WINDOW = 64L << 20;
+
+    private TokenCache() {
+    }
+
+    /*
+    The cache entry for the file as it is now, or null when there is no cache.
+     */
+    static Path entry(String filePath) {
+        if (directory == null) return null;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            CRC32 crc = new CRC32();
+            Adler32 adler = new Adler32();
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset));
+                crc.update(window.duplicate());
+                adler.update(window);
+            }
+            Path cache = Paths.get(directory);
+            Files.createDirectories(cache);
+            return cache.resolve(String.format("%x-%08x-%08x-%d.tok", size, crc.getValue(), adler.getValue(), FORMAT));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+    Opens the entry for replay, or returns null if it has not been written.
+     */
+    static Reader read(Path entry, Symbols symbols) {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < MAGIC.length + 4) return null;
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != FORMAT) return null;
+            return new Reader(buffer, symbols);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+    Starts writing the entry, or returns null if it cannot be created.
+     */
+    static Writer write(Path entry) {
+        try {
+            return new Writer(entry);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static final class Reader {
+        private final MappedByteBuffer buffer;
+        private final Symbols symbols;
+        private String[] texts = new String[256]; // text of each index in the entry
+        private int[] ids = new int[256]; // symbol id in this session of each index plus one, 0 when not interned yet
+        private int count = 0;
+
+        private Reader(MappedByteBuffer buffer, Symbols symbols) {
+            this.buffer = buffer;
+            this.symbols = symbols;
+        }
+
+        /*
+        Feeds the tokens of the next line to lexer. Returns false when there are no more lines.
+         */
+        boolean nextLine(Lexer lexer) {
+            if (!buffer.hasRemaining()) return false;
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == LINE) break;
+                int index = readVarint();
+                if (index == count) {
+                    byte[] text = new byte[readVarint()];
+                    buffer.get(text);
+                    if (count == ids.length) {
+                        texts = Arrays.copyOf(texts, count * 2);
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    texts[count++] = new String(text, StandardCharsets.UTF_8);
+                }
+                if (Token.isLiteral(type)) lexer.replayToken(type, -1, texts[index]);
+                else {
+                    if (ids[index] == 0) ids[index] = symbols.intern(texts[index]) + 1;
+                    lexer.replayToken(type, ids[index] - 1, null);
+                }
+            }
+            return true;
+        }
+
+        private int readVarint() {
+            int res = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                res |= (b & 0x7F) << shift;
+                if (b >= 0) return res;
+            }
+        }
+    }
+
+    static final class Writer {
+        private final Path entry, temporary;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        private final Map<String, Integer> indices = new HashMap<>(); // index in the entry of each text written
+        private int count = 0;
+        private boolean lineHasTokens = false, failed = false;
+
+        private Writer(Path entry) throws IOException {
+            this.entry = entry;
+            temporary = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            buffer.put(MAGIC).putInt(FORMAT);
+        }
+
+        void token(byte type, String text) {
+            reserve(11);
+            buffer.put(type);
+            Integer index = indices.get(text);
+            if (index != null) {
+                putVarint(index);
+                lineHasTokens = true;
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            putVarint(count);
+            putVarint(bytes.length);
+            indices.put(text, count++);
+            for (int start = 0; start < bytes.length; ) {
+                reserve(1);
+                int length = Math.min(buffer.remaining(), bytes.length - start);
+                buffer.put(bytes, start, length);
+                start += length;
+            }
+            lineHasTokens = true;
+        }
+
+        /*
+        Marks the end of a source line, unless it had no tokens.
+         */
+        void line() {
+            if (!lineHasTokens) return;
+            reserve(1);
+            buffer.put(LINE);
+            lineHasTokens = false;
+        }
+
+        /*
+        Finishes the entry and puts it in place for later runs.
+         */
+        void commit() {
+            drain();
+            try {
+                channel.close();
+                if (failed) Files.deleteIfExists(temporary);
+                else Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        /*
+        Drops the entry, for a file that did not run to its end.
+         */
+        void abandon() {
+            try {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void putVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) (value & 0x7F | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void reserve(int count) {
+            if (buffer.remaining() < count) drain();
+        }
+
+        private void drain() {
+            buffer.flip();
+            try {
+                while (!failed && buffer.hasRemaining()) channel.write(buffer);
+            } catch (IOException e) {
+                failed = true;
+            }
+            buffer.clear();
+        }
+    }
+}
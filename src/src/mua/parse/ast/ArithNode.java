@@ -0,0 +1,114 @@
+package src.mua.parse.ast;
+
+import src.mua.core.MuaFunc;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaBool;
+import src.mua.core.types.MuaNum;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Binary arithmetic or comparison. While a node has only seen numbers it works on doubles
+and passes them on to arithmetic parents unboxed. An operand of another type sends it to
+the builtin, and it specializes on numbers again when they come back, up to
+MAX_SPECIALIZATIONS times, so a node whose operand types keep changing stays generic.
+ */
+public class ArithNode extends CallNode {
+    private static final List<String> names = Arrays.asList("add", "sub", "mul", "div", "mod", "gt", "lt", "eq");
+    private static final List<String> operators = Arrays.asList("+", "-", "*", "/", "%");
+    private static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, MOD = 4, GT = 5, LT = 6, EQ = 7;
+    private static final int UNINITIALIZED = 0, NUMBER = 1, GENERIC = 2;
+    private static final int MAX_SPECIALIZATIONS = 4;
+
+    private final int op;
+    private final MuaFunc func;
+    private final MuaNode left, right;
+    private int state = UNINITIALIZED;
+    private int specializations = 0;
+
+    public ArithNode(String name, MuaNode[] args, MuaFunc func) {
+        super(name, args);
+        int op = names.indexOf(name);
+        this.op = op >= 0 ? op : operators.indexOf(name);
+        this.func = func;
+        left = args[0];
+        right = args[1];
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    /*
+    Applies op to two numbers, for evaluators that check the operand types themselves.
+     */
+    public static MuaValue apply(int op, double x, double y) {
+        if (op >= GT) return MuaBool.valueOf(compare(op, x, y));
+        return MuaNum.valueOf(compute(op, x, y));
+    }
+
+    public static boolean isArith(String name, int argCount) {
+        return argCount == 2 && (names.contains(name) || operators.contains(name));
+    }
+
+    @Override
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        if (state == NUMBER) {
+            double x = left.evalNumber(symbolTable, input);
+            MuaValue other = Double.isNaN(x) ? left.takeUnexpected() : null;
+            if (other != null) return generalize(other, right.eval(symbolTable, input), symbolTable, input);
+            double y = right.evalNumber(symbolTable, input);
+            other = Double.isNaN(y) ? right.takeUnexpected() : null;
+            if (other != null) return generalize(MuaNum.valueOf(x), other, symbolTable, input);
+            return apply(op, x, y);
+        }
+        MuaValue x = left.eval(symbolTable, input), y = right.eval(symbolTable, input);
+        if (x instanceof MuaNum && y instanceof MuaNum && specializations < MAX_SPECIALIZATIONS) {
+            state = NUMBER;
+            specializations++;
+        } else if (state == UNINITIALIZED) state = GENERIC;
+        return func.apply(Arrays.asList(x, y), symbolTable, input);
+    }
+
+    @Override
+    public double evalNumber(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        if (state != NUMBER || op >= GT) return super.evalNumber(symbolTable, input);
+        double x = left.evalNumber(symbolTable, input);
+        MuaValue other = Double.isNaN(x) ? left.takeUnexpected() : null;
+        if (other != null) return unbox(generalize(other, right.eval(symbolTable, input), symbolTable, input));
+        double y = right.evalNumber(symbolTable, input);
+        other = Double.isNaN(y) ? right.takeUnexpected() : null;
+        if (other != null) return unbox(generalize(MuaNum.valueOf(x), other, symbolTable, input));
+        return compute(op, x, y);
+    }
+
+    private MuaValue generalize(MuaValue x, MuaValue y, SymbolTable symbolTable, MuaInput input) throws ParseException {
+        state = GENERIC;
+        return func.apply(Arrays.asList(x, y), symbolTable, input);
+    }
+
+    private static double compute(int op, double x, double y) {
+        switch (op) {
+            case ADD:
+                return x + y;
+            case SUB:
+                return x - y;
+            case MUL:
+                return x * y;
+            case DIV:
+                return x / y;
+            default:
+                return Math.round(x) % Math.round(y);
+        }
+    }
+
+    private static boolean compare(int op, double x, double y) {
+        if (op == GT) return x > y;
+        else if (op == LT) return x < y;
+        else return x == y;
+    }
+}
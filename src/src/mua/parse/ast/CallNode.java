@@ -0,0 +1,65 @@
+package src.mua.parse.ast;
+
+import src.mua.core.CallSite;
+import src.mua.core.MuaCustomFunc;
+import src.mua.core.MuaFunc;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.TailCall;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CallNode extends MuaNode {
+    private final String name;
+    private final CallSite site;
+    private final MuaNode[] args;
+
+    public CallNode(CallSite site, MuaNode[] args) {
+        this.name = site.getName();
+        this.site = site;
+        this.args = args;
+    }
+
+    /*
+    For subclasses that do not look the function up.
+     */
+    protected CallNode(String name, MuaNode[] args) {
+        this.name = name;
+        this.site = null;
+        this.args = args;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MuaNode[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        MuaFunc func = site.lookup(symbolTable);
+        if (func == null) throw new RuntimeException("Word " + name + " is not a function name");
+        List<MuaValue> argList = new ArrayList<>(args.length);
+        for (MuaNode arg : args) argList.add(arg.eval(symbolTable, input));
+        return func.apply(argList, symbolTable, input);
+    }
+
+    /*
+    Evaluates the arguments but leaves a call to a user function to the caller.
+     */
+    MuaValue evalTailCall(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        if (site == null) return eval(symbolTable, input);
+        MuaFunc func = site.lookup(symbolTable);
+        if (func == null) throw new RuntimeException("Word " + name + " is not a function name");
+        MuaValue[] values = new MuaValue[args.length];
+        for (int i = 0; i < args.length; i++) values[i] = args[i].eval(symbolTable, input);
+        if (func instanceof MuaCustomFunc) return new TailCall((MuaCustomFunc) func, values);
+        return func.apply(Arrays.asList(values), symbolTable, input);
+    }
+}
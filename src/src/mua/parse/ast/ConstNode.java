@@ -0,0 +1,23 @@
+package src.mua.parse.ast;
+
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaValue;
+
+
+public class ConstNode extends MuaNode {
+    private final MuaValue value;
+
+    public ConstNode(MuaValue value) {
+        this.value = value;
+    }
+
+    public MuaValue getValue() {
+        return value;
+    }
+
+    @Override
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) {
+        return value;
+    }
+}
@@ -0,0 +1,34 @@
+package src.mua.parse.ast;
+
+import src.mua.core.CallSite;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaBool;
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+import src.mua.parse.CodeBlock;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+/*
+A call of if. In tail position the branch taken is run in tail position as well.
+ */
+public class IfNode extends CallNode {
+    public IfNode(CallSite site, MuaNode[] args) {
+        super(site, args);
+    }
+
+    @Override
+    public MuaValue evalTail(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        MuaNode[] args = getArgs();
+        MuaValue condition = args[0].eval(symbolTable, input);
+        MuaValue x = args[1].eval(symbolTable, input), y = args[2].eval(symbolTable, input);
+        if (!(condition instanceof MuaBool))
+            return symbolTable.getFunction("if").apply(Arrays.asList(condition, x, y), symbolTable, input);
+        MuaValue branch = ((MuaBool) condition).toBoolean() ? x : y;
+        if (!(branch instanceof MuaList))
+            return symbolTable.getFunction("if").apply(Arrays.asList(condition, x, y), symbolTable, input);
+        return CodeBlock.of((MuaList) branch, symbolTable).run(symbolTable, input, true);
+    }
+}
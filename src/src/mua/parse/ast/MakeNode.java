@@ -0,0 +1,42 @@
+package src.mua.parse.ast;
+
+import src.mua.core.FrameLayout;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaNull;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+
+/*
+make with a literal name that is known to be valid, writing to the frame slot when there is one.
+ */
+public class MakeNode extends CallNode {
+    private final String name;
+    private final MuaNode value;
+    private FrameLayout layout;
+    private int slot = -1;
+
+    public MakeNode(MuaNode[] args, String name) {
+        super("make", args);
+        this.name = name;
+        this.value = args[1];
+    }
+
+    @Override
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        MuaValue res = value.eval(symbolTable, input);
+        if (res instanceof MuaNull) {
+            throw new RuntimeException("Invalid type for parameter value:" + res.getClass().getName());
+        }
+        FrameLayout frameLayout = symbolTable.getLayout();
+        if (frameLayout != layout) {
+            layout = frameLayout;
+            slot = frameLayout == null ? -1 : frameLayout.slotOf(name);
+        }
+        if (slot >= 0) symbolTable.setSlot(slot, res);
+        else symbolTable.provideVariable(name, res);
+        symbolTable.getJit().invalidate(name);
+        return MuaNull.INSTANCE;
+    }
+}
@@ -0,0 +1,45 @@
+package src.mua.parse.ast;
+
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaNum;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+
+abstract public class MuaNode {
+    // what evalNumber last got instead of a number, until the parent takes it
+    private MuaValue unexpected;
+
+    abstract public MuaValue eval(SymbolTable symbolTable, MuaInput input) throws ParseException;
+
+    /*
+    Evaluates the node in tail position of a function body, where it may return a TailCall instead.
+     */
+    public MuaValue evalTail(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return eval(symbolTable, input);
+    }
+
+    /*
+    Evaluates to an unboxed number, for parents that work on doubles. Anything else is kept for
+    takeUnexpected and NaN is returned in its place, so a NaN result must be checked with it.
+     */
+    public double evalNumber(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        return unbox(eval(symbolTable, input));
+    }
+
+    protected final double unbox(MuaValue value) {
+        if (value instanceof MuaNum) return ((MuaNum) value).value;
+        unexpected = value;
+        return Double.NaN;
+    }
+
+    /*
+    The value behind the NaN evalNumber last returned, or null if that NaN was a number.
+     */
+    public final MuaValue takeUnexpected() {
+        MuaValue value = unexpected;
+        unexpected = null;
+        return value;
+    }
+}
@@ -0,0 +1,28 @@
+package src.mua.parse.ast;
+
+import src.mua.core.CallSite;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.TailCall;
+import src.mua.core.types.MuaValue;
+
+import java.text.ParseException;
+import java.util.Collections;
+
+/*
+A call of output. In tail position `output <call>` hands a call to a user function back as a TailCall.
+ */
+public class OutputNode extends CallNode {
+    public OutputNode(CallSite site, MuaNode[] args) {
+        super(site, args);
+    }
+
+    @Override
+    public MuaValue evalTail(SymbolTable symbolTable, MuaInput input) throws ParseException {
+        MuaNode arg = getArgs()[0];
+        if (!(arg instanceof CallNode)) return eval(symbolTable, input);
+        MuaValue value = ((CallNode) arg).evalTailCall(symbolTable, input);
+        if (value instanceof TailCall) return value;
+        return symbolTable.getFunction("output").apply(Collections.singletonList(value), symbolTable, input);
+    }
+}
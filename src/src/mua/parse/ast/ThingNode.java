@@ -0,0 +1,38 @@
+package src.mua.parse.ast;
+
+import src.mua.core.FrameLayout;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaValue;
+
+
+/*
+Reads a variable whose name is written in the code. The slot it resolves to is remembered
+per frame layout, since the same block can run in frames of different functions.
+ */
+public class ThingNode extends CallNode {
+    private final String name;
+    private FrameLayout layout;
+    private int slot = -1;
+
+    public ThingNode(MuaNode[] args, String name) {
+        super("thing", args);
+        this.name = name;
+    }
+
+    @Override
+    public MuaValue eval(SymbolTable symbolTable, MuaInput input) {
+        FrameLayout frameLayout = symbolTable.getLayout();
+        if (frameLayout != null) {
+            if (frameLayout != layout) {
+                layout = frameLayout;
+                slot = frameLayout.slotOf(name);
+            }
+            if (slot >= 0) {
+                MuaValue value = symbolTable.getSlot(slot);
+                if (value != null) return value;
+            }
+        }
+        return symbolTable.getVariable(name);
+    }
+}
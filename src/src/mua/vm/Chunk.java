@@ -0,0 +1,59 @@
+package src.mua.vm;
+
+import src.mua.core.CallSite;
+import src.mua.core.FrameLayout;
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+import src.mua.parse.Lexer;
+import src.mua.parse.Statement;
+
+/*
+Compiled form of a block: instructions, their constants and the statements they were compiled from.
+ */
+final class Chunk {
+    final int[] code;
+    final MuaValue[] consts;
+    final String[] names;
+    final Statement[] statements;
+    final int[] statementPcs;
+    final int slotCount, loopCount;
+    final Lexer source; // null for a single top-level statement
+    final int from;
+    final MuaList owner;
+    // slot of each name for the frame layout it was last looked up in
+    final FrameLayout[] nameLayouts;
+    final int[] nameSlots;
+    final CallSite[] sites;
+
+    Chunk(int[] code, MuaValue[] consts, String[] names, Statement[] statements, int[] statementPcs,
+          int slotCount, int loopCount, Lexer source, int from, MuaList owner) {
+        this.code = code;
+        this.consts = consts;
+        this.names = names;
+        this.statements = statements;
+        this.statementPcs = statementPcs;
+        this.slotCount = slotCount;
+        this.loopCount = loopCount;
+        this.source = source;
+        this.from = from;
+        this.owner = owner;
+        nameLayouts = new FrameLayout[names.length];
+        nameSlots = new int[names.length];
+        sites = new CallSite[names.length];
+    }
+
+    int slotOf(int name, FrameLayout layout) {
+        if (layout == null) return -1;
+        if (nameLayouts[name] != layout) {
+            nameLayouts[name] = layout;
+            nameSlots[name] = layout.slotOf(names[name]);
+        }
+        return nameSlots[name];
+    }
+
+    int pcOf(int tokenIdx) {
+        for (int i = 0; i < statements.length; i++)
+            if (statements[i].start == tokenIdx) return statementPcs[i];
+        return -1;
+    }
+}
@@ -0,0 +1,187 @@
+package src.mua.vm;
+
+import src.mua.core.SymbolTable;
+import src.mua.core.types.MuaList;
+import src.mua.core.types.MuaValue;
+import src.mua.parse.Lexer;
+import src.mua.parse.Parser;
+import src.mua.parse.Statement;
+import src.mua.parse.ast.ArithNode;
+import src.mua.parse.ast.CallNode;
+import src.mua.parse.ast.ConstNode;
+import src.mua.parse.ast.MakeNode;
+import src.mua.parse.ast.MuaNode;
+import src.mua.parse.ast.ThingNode;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+Compiles parsed statements into a Chunk. Function names are resolved against the symbol table
+at compile time, each statement starts with a CHECK so the VM can recompile when that goes stale.
+ */
+class ChunkCompiler {
+    private final MuaVM vm;
+    private final SymbolTable symbolTable;
+    private int[] code = new int[64];
+    private int size = 0, slotCount = 0, loopCount = 0;
+    private final ArrayList<MuaValue> consts = new ArrayList<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<Statement> statements = new ArrayList<>();
+    private final ArrayList<Integer> statementPcs = new ArrayList<>();
+
+    ChunkCompiler(MuaVM vm, SymbolTable symbolTable) {
+        this.vm = vm;
+        this.symbolTable = symbolTable;
+    }
+
+    Chunk compileBlock(Lexer source, int from, MuaList owner) throws ParseException {
+        source.seek(from);
+        Parser parser = new Parser(source, symbolTable);
+        boolean stopped = false;
+        while (!source.isTokenFinished()) {
+            Statement statement = parser.parseStatement();
+            if (statement.isStop()) {
+                stopped = true;
+                break;
+            }
+            statements.add(statement);
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            Statement statement = statements.get(i);
+            statementPcs.add(size);
+            emit(OpCode.CHECK, i);
+            compileNode(statement.getNode(), statement.end == source.tokenCount());
+            emit(OpCode.SET_RESULT);
+        }
+        if (stopped) emit(OpCode.STOP);
+        emit(OpCode.RETURN);
+        return build(source, from, owner);
+    }
+
+    Chunk compileStatement(Statement statement) throws ParseException {
+        compileNode(statement.getNode());
+        emit(OpCode.SET_RESULT);
+        emit(OpCode.RETURN);
+        return build(null, statement.start, null);
+    }
+
+    private Chunk build(Lexer source, int from, MuaList owner) {
+        int[] pcs = new int[statementPcs.size()];
+        for (int i = 0; i < pcs.length; i++) pcs[i] = statementPcs.get(i);
+        return new Chunk(Arrays.copyOf(code, size), consts.toArray(new MuaValue[0]), names.toArray(new String[0]),
+                statements.toArray(new Statement[0]), pcs, slotCount, loopCount, source, from, owner);
+    }
+
+    private void compileNode(MuaNode node) throws ParseException {
+        compileNode(node, false);
+    }
+
+    /*
+    A node in tail position is the last statement of its block. Whether the block itself is
+    in tail position of a function is only known when it runs.
+     */
+    private void compileNode(MuaNode node, boolean tail) throws ParseException {
+        if (node instanceof ConstNode) {
+            emit(OpCode.CONST, constant(((ConstNode) node).getValue()));
+            return;
+        }
+        CallNode call = (CallNode) node;
+        String name = call.getName();
+        MuaNode[] args = call.getArgs();
+        if (node instanceof ThingNode) {
+            emit(OpCode.LOAD_VAR, name(((ConstNode) args[0]).getValue().toString()));
+        } else if (node instanceof MakeNode) {
+            compileNode(args[1]);
+            emit(OpCode.MAKE_VAR, name(((ConstNode) args[0]).getValue().toString()));
+        } else if (symbolTable.isCoreFunction(name)) {
+            if (node instanceof ArithNode) {
+                compileNode(args[0]);
+                compileNode(args[1]);
+                emit(OpCode.ARITH, ((ArithNode) node).getOp(), vm.builtinIndex(name, symbolTable.getFunction(name)));
+            } else if (name.equals("if")) compileIf(args, tail);
+            else if (name.equals("output") && tail && args.length == 1 && isUserCall(args[0])) {
+                CallNode callee = (CallNode) args[0];
+                for (MuaNode arg : callee.getArgs()) compileNode(arg);
+                emit(OpCode.TAIL_CALL, name(callee.getName()), callee.getArgs().length);
+                emit(OpCode.CALL_BUILTIN, vm.builtinIndex(name, symbolTable.getFunction(name)), 1);
+            } else if (name.equals("repeat")) compileRepeat(args);
+            else {
+                for (MuaNode arg : args) compileNode(arg);
+                emit(OpCode.CALL_BUILTIN, vm.builtinIndex(name, symbolTable.getFunction(name)), args.length);
+            }
+        } else {
+            for (MuaNode arg : args) compileNode(arg);
+            emit(OpCode.CALL_USER, name(name), args.length);
+        }
+    }
+
+    private boolean isUserCall(MuaNode node) {
+        return node instanceof CallNode && !symbolTable.isCoreFunction(((CallNode) node).getName());
+    }
+
+    private void compileIf(MuaNode[] args, boolean tail) throws ParseException {
+        int runBlock = tail ? OpCode.RUN_BLOCK_TAIL : OpCode.RUN_BLOCK;
+        compileNode(args[0]);
+        if (args[1] instanceof ConstNode && args[2] instanceof ConstNode) {
+            int toElse = emitJump(OpCode.JUMP_FALSE);
+            compileNode(args[1]);
+            emit(runBlock);
+            int toEnd = emitJump(OpCode.JUMP);
+            patch(toElse);
+            compileNode(args[2]);
+            emit(runBlock);
+            patch(toEnd);
+        } else {
+            compileNode(args[1]);
+            compileNode(args[2]);
+            emit(OpCode.SELECT);
+            emit(runBlock);
+        }
+    }
+
+    private void compileRepeat(MuaNode[] args) throws ParseException {
+        int slot = slotCount, loop = loopCount;
+        slotCount += 2;
+        loopCount++;
+        compileNode(args[0]);
+        compileNode(args[1]);
+        emit(OpCode.REPEAT_INIT, slot, loop);
+        int head = size;
+        emit(OpCode.REPEAT_NEXT, loop, -1);
+        int toEnd = size - 1;
+        emit(OpCode.LOAD_SLOT, slot);
+        emit(OpCode.RUN_BLOCK);
+        emit(OpCode.STORE_SLOT, slot + 1);
+        emit(OpCode.JUMP, head);
+        code[toEnd] = size;
+        emit(OpCode.LOAD_SLOT, slot + 1);
+    }
+
+    private int constant(MuaValue value) {
+        consts.add(value);
+        return consts.size() - 1;
+    }
+
+    private int name(String name) {
+        int idx = names.indexOf(name);
+        if (idx >= 0) return idx;
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    private int emitJump(int op) {
+        emit(op, -1);
+        return size - 1;
+    }
+
+    private void patch(int operand) {
+        code[operand] = size;
+    }
+
+    private void emit(int... ops) {
+        if (size + ops.length > code.length) code = Arrays.copyOf(code, code.length * 2 + ops.length);
+        for (int op : ops) code[size++] = op;
+    }
+}
@@ -0,0 +1,358 @@
+package src.mua.vm;
+
+import src.mua.core.CallSite;
+import src.mua.core.FrameLayout;
+import src.mua.core.MuaCustomFunc;
+import src.mua.core.MuaFunc;
+import src.mua.core.MuaInput;
+import src.mua.core.SymbolTable;
+import src.mua.core.types.*;
+import src.mua.parse.Lexer;
+import src.mua.parse.Parser;
+import src.mua.parse.Statement;
+import src.mua.parse.ast.ArithNode;
+
+import java.text.ParseException;
+import java.util.*;
+
+/*
+Stack machine running compiled Chunks. Calls to user functions and blocks push a Frame
+on the VM's own frame stack instead of recursing on the Java stack.
+ */
+public class MuaVM {
+    /*
+    Sizes of what a frame keeps alive, for a 64-bit JVM with compressed references:
+    12-byte object headers, 16-byte array headers and 4-byte references, padded to 8 bytes.
+    A Frame has seven reference or int fields and a call's SymbolTable eleven references and a boolean.
+     */
+    private static final int FRAME_BYTES = 48, SYMBOL_TABLE_BYTES = 64, REF_BYTES = 4;
+
+    private static final class Frame {
+        Chunk chunk;
+        int pc, stackBase;
+        SymbolTable symbolTable;
+        MuaValue[] slots;
+        int[] loops;
+        MuaValue result;
+        // call is set on frames of user functions; tail on those and on blocks in tail position of one
+        boolean call, tail;
+        // bytes counted against the budget for this frame
+        long bytes;
+    }
+
+    // bytes the frame and value stacks may hold, set with -Dmua.vm.stackBudget
+    private final long stackBudget = Long.getLong("mua.vm.stackBudget", 64L << 20);
+    private long stackBytes = 0;
+
+    private final ArrayList<MuaFunc> builtins = new ArrayList<>();
+    private final HashMap<String, Integer> builtinIndex = new HashMap<>();
+    private MuaValue[] stack = new MuaValue[256];
+    private Frame[] frames = new Frame[64];
+    private int sp = 0, fp = 0, peakDepth = 0;
+
+    int builtinIndex(String name, MuaFunc func) {
+        Integer idx = builtinIndex.get(name);
+        if (idx != null) return idx;
+        builtins.add(func);
+        builtinIndex.put(name, builtins.size() - 1);
+        return builtins.size() - 1;
+    }
+
+    /*
+    The most frames that were ever on the frame stack at once.
+     */
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+
+    /*
+    Runs top-level statements like Interpreter.accept, returning false on stop.
+     */
+    public boolean accept(Lexer tokenStream, SymbolTable symbolTable, MuaInput input) throws ParseException {
+        Parser parser = new Parser(tokenStream, symbolTable);
+        while (!tokenStream.isTokenFinished()) {
+            Statement statement = parser.parseStatement();
+            if (statement.isStop()) {
+                tokenStream.seek(statement.start);
+                return false;
+            }
+            run(new ChunkCompiler(this, symbolTable).compileStatement(statement), symbolTable, input);
+            symbolTable.clearExit();
+            tokenStream.discardConsumed();
+        }
+        return true;
+    }
+
+    private Chunk blockChunk(MuaValue code, SymbolTable symbolTable) throws ParseException {
+        if (!(code instanceof MuaList)) {
+            String rawCode = code.toString();
+            Lexer source = new Lexer(rawCode.substring(1, rawCode.length() - 1), symbolTable);
+            return new ChunkCompiler(this, symbolTable).compileBlock(source, 0, null);
+        }
+        MuaList list = (MuaList) code;
+        Chunk chunk = list.getCached(Chunk.class);
+        if (chunk != null) return chunk;
+        String rawCode = list.toString();
+        Lexer source = Lexer.ofBlock(rawCode.substring(1, rawCode.length() - 1), symbolTable);
+        chunk = new ChunkCompiler(this, symbolTable).compileBlock(source, 0, list);
+        list.setCached(chunk);
+        return chunk;
+    }
+
+    private static long arrayBytes(int length) {
+        return (16L + (long) length * REF_BYTES + 7) & ~7L;
+    }
+
+    /*
+    Bytes a frame running chunk keeps alive: the Frame, its slot and loop arrays,
+    and for a call the function's SymbolTable with its slots.
+     */
+    private static long frameBytes(Chunk chunk, SymbolTable symbolTable, boolean call) {
+        long bytes = FRAME_BYTES;
+        if (chunk.slotCount > 0) bytes += arrayBytes(chunk.slotCount);
+        if (chunk.loopCount > 0) bytes += arrayBytes(chunk.loopCount);
+        if (call) {
+            FrameLayout layout = symbolTable.getLayout();
+            bytes += SYMBOL_TABLE_BYTES + arrayBytes(layout == null ? 0 : layout.size());
+        }
+        return bytes;
+    }
+
+    private void popFrames(int to) {
+        for (int i = to; i < fp; i++) {
+            frames[i].symbolTable = null;
+            stackBytes -= frames[i].bytes;
+        }
+        fp = to;
+    }
+
+    private void pushFrame(Chunk chunk, SymbolTable symbolTable, boolean call, boolean tail) {
+        long bytes = frameBytes(chunk, symbolTable, call);
+        // the frame and value stack arrays themselves count too
+        if (stackBytes + bytes + arrayBytes(frames.length) + arrayBytes(stack.length) > stackBudget)
+            throw new RuntimeException("VM stack budget of " + stackBudget + " bytes exceeded at depth " + fp
+                    + ", peak depth " + Math.max(peakDepth, fp));
+        if (fp == frames.length) frames = Arrays.copyOf(frames, fp * 2);
+        Frame frame = frames[fp];
+        if (frame == null) frame = frames[fp] = new Frame();
+        frame.chunk = chunk;
+        frame.pc = 0;
+        frame.stackBase = sp;
+        frame.symbolTable = symbolTable;
+        frame.slots = chunk.slotCount > 0 ? new MuaValue[chunk.slotCount] : null;
+        frame.loops = chunk.loopCount > 0 ? new int[chunk.loopCount] : null;
+        frame.result = MuaNull.INSTANCE;
+        frame.call = call;
+        frame.tail = tail;
+        frame.bytes = bytes;
+        stackBytes += bytes;
+        if (++fp > peakDepth) peakDepth = fp;
+    }
+
+    private void push(MuaValue value) {
+        if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+        stack[sp++] = value;
+    }
+
+    /*
+    Statement i of the frame's chunk was parsed against functions that have changed since.
+    Recompile the block and continue from the same statement.
+     */
+    private void deoptimize(Frame frame, int i) throws ParseException {
+        Chunk chunk = frame.chunk;
+        int start = chunk.statements[i].start;
+        Chunk recompiled = new ChunkCompiler(this, frame.symbolTable).compileBlock(chunk.source, chunk.from, chunk.owner);
+        int pc = recompiled.pcOf(start);
+        if (pc < 0) {
+            recompiled = new ChunkCompiler(this, frame.symbolTable).compileBlock(chunk.source, start, null);
+            pc = 0;
+        } else if (chunk.owner != null) chunk.owner.setCached(recompiled);
+        frame.chunk = recompiled;
+        frame.pc = pc;
+        if (recompiled.slotCount > 0) frame.slots = new MuaValue[recompiled.slotCount];
+        if (recompiled.loopCount > 0) frame.loops = new int[recompiled.loopCount];
+        stackBytes -= frame.bytes;
+        frame.bytes = frameBytes(recompiled, frame.symbolTable, frame.call);
+        stackBytes += frame.bytes;
+    }
+
+    private void callUser(Chunk chunk, int name, int argCount, SymbolTable symbolTable, boolean tail) throws ParseException {
+        CallSite site = chunk.sites[name];
+        if (site == null) site = chunk.sites[name] = new CallSite(chunk.names[name], symbolTable);
+        MuaFunc func = site.lookup(symbolTable);
+        if (!(func instanceof MuaCustomFunc))
+            throw new RuntimeException("Word " + chunk.names[name] + " is not a function name");
+        MuaCustomFunc custom = (MuaCustomFunc) func;
+        if (custom.argCount() != argCount)
+            throw new RuntimeException("Function " + chunk.names[name] + " expects " + custom.argCount() + " arguments");
+        MuaValue[] args = Arrays.copyOfRange(stack, sp - argCount, sp);
+        sp -= argCount;
+        MuaValue res = symbolTable.getJit().invoke(chunk.names[name], custom.getDef(), args, symbolTable);
+        if (res != null) {
+            push(res);
+            return;
+        }
+        if (tail) {
+            // drop the calling function's frame and the blocks above it, the callee returns in its place
+            int callFp = fp - 1;
+            while (!frames[callFp].call) callFp--;
+            int stackBase = frames[callFp].stackBase;
+            popFrames(callFp);
+            Arrays.fill(stack, stackBase, sp, null);
+            sp = stackBase;
+        }
+        SymbolTable local = custom.getLayout(symbolTable).newFrame(symbolTable, args);
+        pushFrame(blockChunk(custom.getCode(), local), local, true, true);
+    }
+
+    private MuaValue run(Chunk chunk, SymbolTable symbolTable, MuaInput input) throws ParseException {
+        int baseFp = fp, baseSp = sp;
+        pushFrame(chunk, symbolTable, false, false);
+        try {
+            return execute(baseFp, input);
+        } finally {
+            popFrames(baseFp);
+            Arrays.fill(stack, baseSp, sp, null);
+            sp = baseSp;
+        }
+    }
+
+    private MuaValue execute(int baseFp, MuaInput input) throws ParseException {
+        Frame frame = frames[fp - 1];
+        int[] code = frame.chunk.code;
+        while (true) {
+            int op = code[frame.pc++];
+            switch (op) {
+                case OpCode.CONST:
+                    push(frame.chunk.consts[code[frame.pc++]]);
+                    break;
+                case OpCode.LOAD_SLOT:
+                    push(frame.slots[code[frame.pc++]]);
+                    break;
+                case OpCode.STORE_SLOT:
+                    frame.slots[code[frame.pc++]] = stack[--sp];
+                    break;
+                case OpCode.CALL_BUILTIN: {
+                    MuaFunc func = builtins.get(code[frame.pc++]);
+                    int argCount = code[frame.pc++];
+                    List<MuaValue> args = Arrays.asList(Arrays.copyOfRange(stack, sp - argCount, sp));
+                    sp -= argCount;
+                    push(func.apply(args, frame.symbolTable, input));
+                    break;
+                }
+                case OpCode.ARITH: {
+                    int arith = code[frame.pc++], idx = code[frame.pc++];
+                    MuaValue y = stack[--sp], x = stack[--sp];
+                    if (x instanceof MuaNum && y instanceof MuaNum)
+                        push(ArithNode.apply(arith, ((MuaNum) x).value, ((MuaNum) y).value));
+                    else push(builtins.get(idx).apply(Arrays.asList(x, y), frame.symbolTable, input));
+                    break;
+                }
+                case OpCode.CALL_USER: {
+                    int name = code[frame.pc++];
+                    callUser(frame.chunk, name, code[frame.pc++], frame.symbolTable, false);
+                    frame = frames[fp - 1];
+                    code = frame.chunk.code;
+                    break;
+                }
+                case OpCode.TAIL_CALL: {
+                    int name = code[frame.pc++];
+                    callUser(frame.chunk, name, code[frame.pc++], frame.symbolTable, frame.tail);
+                    frame = frames[fp - 1];
+                    code = frame.chunk.code;
+                    break;
+                }
+                case OpCode.JUMP:
+                    frame.pc = code[frame.pc];
+                    break;
+                case OpCode.JUMP_FALSE: {
+                    MuaValue condition = stack[--sp];
+                    if (!(condition instanceof MuaBool))
+                        throw new RuntimeException("Invalid type for boolean calculus:" + condition.getClass().getName());
+                    if (((MuaBool) condition).toBoolean()) frame.pc++;
+                    else frame.pc = code[frame.pc];
+                    break;
+                }
+                case OpCode.SELECT: {
+                    MuaValue y = stack[--sp], x = stack[--sp], condition = stack[--sp];
+                    if (!(condition instanceof MuaBool))
+                        throw new RuntimeException("Invalid type for boolean calculus:" + condition.getClass().getName());
+                    push(((MuaBool) condition).toBoolean() ? x : y);
+                    break;
+                }
+                case OpCode.RUN_BLOCK:
+                case OpCode.RUN_BLOCK_TAIL:
+                    pushFrame(blockChunk(stack[--sp], frame.symbolTable), frame.symbolTable,
+                            false, op == OpCode.RUN_BLOCK_TAIL && frame.tail);
+                    frame = frames[fp - 1];
+                    code = frame.chunk.code;
+                    break;
+                case OpCode.REPEAT_INIT: {
+                    MuaValue body = stack[--sp], count = stack[--sp];
+                    if (!(count instanceof MuaNum) || !(body instanceof MuaList))
+                        throw new RuntimeException("Invalid type for repeat:" + count.getClass().getName() + body.getClass().getName());
+                    int slot = code[frame.pc++];
+                    frame.slots[slot] = body;
+                    frame.slots[slot + 1] = MuaNull.INSTANCE;
+                    frame.loops[code[frame.pc++]] = (int) Math.round(count.toNumber());
+                    break;
+                }
+                case OpCode.REPEAT_NEXT: {
+                    int loop = code[frame.pc++];
+                    if (frame.loops[loop] > 0 && !frame.symbolTable.isExiting()) {
+                        frame.loops[loop]--;
+                        frame.pc++;
+                    } else frame.pc = code[frame.pc];
+                    break;
+                }
+                case OpCode.SET_RESULT:
+                    frame.result = stack[--sp];
+                    if (frame.symbolTable.isExiting()) frame.pc = code.length - 1; // RETURN
+                    break;
+                case OpCode.STOP:
+                    frame.symbolTable.exit(null);
+                    break;
+                case OpCode.CHECK: {
+                    int i = code[frame.pc++];
+                    if (!frame.chunk.statements[i].isValid(frame.symbolTable)) {
+                        deoptimize(frame, i);
+                        code = frame.chunk.code;
+                    }
+                    break;
+                }
+                case OpCode.RETURN: {
+                    SymbolTable symbolTable = frame.symbolTable;
+                    MuaValue res = symbolTable.hasReturnValue() ? symbolTable.getReturnValue() : frame.result;
+                    sp = frame.stackBase;
+                    popFrames(fp - 1);
+                    if (fp == baseFp) return res;
+                    push(res);
+                    frame = frames[fp - 1];
+                    code = frame.chunk.code;
+                    break;
+                }
+                case OpCode.LOAD_VAR: {
+                    int name = code[frame.pc++];
+                    int slot = frame.chunk.slotOf(name, frame.symbolTable.getLayout());
+                    MuaValue value = slot >= 0 ? frame.symbolTable.getSlot(slot) : null;
+                    push(value != null ? value : frame.symbolTable.getVariable(frame.chunk.names[name]));
+                    break;
+                }
+                case OpCode.MAKE_VAR: {
+                    int name = code[frame.pc++];
+                    MuaValue value = stack[--sp];
+                    if (value instanceof MuaNull)
+                        throw new RuntimeException("Invalid type for parameter value:" + value.getClass().getName());
+                    int slot = frame.chunk.slotOf(name, frame.symbolTable.getLayout());
+                    if (slot >= 0) frame.symbolTable.setSlot(slot, value);
+                    else frame.symbolTable.provideVariable(frame.chunk.names[name], value);
+                    frame.symbolTable.getJit().invalidate(frame.chunk.names[name]);
+                    push(MuaNull.INSTANCE);
+                    break;
+                }
+                default:
+                    throw new RuntimeException("Invalid opcode " + op);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package src.mua.vm;
+
+/*
+Instruction set of MuaVM. Each instruction is an opcode followed by its operands in the same int[].
+ */
+final class OpCode {
+    static final int CONST = 0;         // k: push constant k
+    static final int LOAD_SLOT = 1;     // s: push slot s of the frame
+    static final int STORE_SLOT = 2;    // s: pop into slot s of the frame
+    static final int CALL_BUILTIN = 3;  // idx argc: call builtin idx with argc arguments from the stack
+    static final int CALL_USER = 4;     // name argc: call the user function bound to name
+    static final int JUMP = 5;          // target
+    static final int JUMP_FALSE = 6;    // target: pop a bool, jump if false
+    static final int SELECT = 7;        // pop y, x, condition; push x if condition else y
+    static final int RUN_BLOCK = 8;     // pop a list and run it as code in the current scope
+    static final int REPEAT_INIT = 9;   // s l: pop body into slot s, pop count into loop counter l
+    static final int REPEAT_NEXT = 10;  // l target: jump to target if loop counter l is used up, else count down
+    static final int SET_RESULT = 11;   // pop the value of a finished statement, return if output or stop ran
+    static final int CHECK = 12;        // i: recompile if statement i was parsed against stale functions
+    static final int RETURN = 13;
+    static final int LOAD_VAR = 14;     // name: push the variable name, from its frame slot if it has one
+    static final int MAKE_VAR = 15;     // name: pop a value and make it the variable name
+    static final int RUN_BLOCK_TAIL = 16; // RUN_BLOCK for the last statement of a block
+    static final int TAIL_CALL = 17;    // name argc: in tail position of a function replace its frame, else CALL_USER
+    static final int ARITH = 18;        // op idx: pop y, x; apply ArithNode op to numbers, else call builtin idx
+    static final int STOP = 19;         // end the blocks running in the frame's scope, as stop does
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+Writes Builtins.java from the fields of MuaCoreFuncImpl and MuaConsts, so the interpreter finds
+its builtins without reflection at startup. It is a build tool and not part of the interpreter.
+Run it with the compiled interpreter on the class path after adding or renaming a builtin, or
+with --check to fail when the file is out of date:
+
+    java -cp out:tools-out BuiltinsGenerator [--check] src/src/mua/core/Builtins.java
+ */
+public final class BuiltinsGenerator {
+    private BuiltinsGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        boolean check = args.length > 0 && args[0].equals("--check");
+        Path path = Paths.get(args.length > (check ? 1 : 0) ? args[args.length - 1] : "src/src/mua/core/Builtins.java");
+        String source = generate(Class.forName("src.mua.core.MuaCoreFuncImpl").getFields(),
+                Class.forName("src.mua.core.MuaConsts").getFields());
+        if (!check) Files.write(path, source.getBytes(StandardCharsets.UTF_8));
+        else if (!Files.exists(path) || !new String(Files.readAllBytes(path), StandardCharsets.UTF_8).equals(source)) {
+            System.err.println(path + " is out of date, regenerate it with BuiltinsGenerator");
+            System.exit(1);
+        }
+    }
+
+    private static String generate(Field[] funcs, Field[] consts) {
+        StringWriter res = new StringWriter();
+        try (PrintWriter out = new PrintWriter(res)) {
+            out.println("package src.mua.core;");
+            out.println();
+            out.println("import src.mua.core.types.MuaValue;");
+            out.println();
+            out.println("/*");
+            out.println("Generated by BuiltinsGenerator from MuaCoreFuncImpl and MuaConsts, do not edit.");
+            out.println("Symbols interns the names of the functions right after its predefined symbols, so the");
+            out.println("function with symbol id Symbols.FIRST_BUILTIN + i is FUNCS[i] in every interpreter.");
+            out.println(" */");
+            out.println("final class Builtins {");
+            out.println("    static final String[] NAMES = {");
+            for (Field field : funcs) out.printf("            \"%s\",%n", field.getName().substring(1));
+            out.println("    };");
+            out.println();
+            out.println("    static final MuaFunc[] FUNCS = {");
+            for (Field field : funcs) out.printf("            MuaCoreFuncImpl.%s,%n", field.getName());
+            out.println("    };");
+            out.println();
+            out.println("    static final String[] CONST_NAMES = {");
+            for (Field field : consts) out.printf("            \"%s\",%n", field.getName().substring(1));
+            out.println("    };");
+            out.println();
+            out.println("    static final MuaValue[] CONSTS = {");
+            for (Field field : consts) out.printf("            MuaConsts.%s,%n", field.getName());
+            out.println("    };");
+            out.println();
+            out.println("    private Builtins() {");
+            out.println("    }");
+            out.println();
+            out.println("    // index of a function name in NAMES, or -1");
+            out.println("    static int indexOf(String name) {");
+            out.println("        switch (name) {");
+            for (int i = 0; i < funcs.length; i++)
+                out.printf("            case \"%s\": return %d;%n", funcs[i].getName().substring(1), i);
+            out.println("            default: return -1;");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        }
+        return res.toString();
+    }
+}